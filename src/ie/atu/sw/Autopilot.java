@@ -0,0 +1,32 @@
+package ie.atu.sw;
+
+/**
+ * Anything that can turn the features of a game state into scores for the
+ * next move: a network loaded in process or a client of a shared inference
+ * server.
+ */
+public interface Autopilot {
+	/**
+	 * Predicts the next move based on input game features.
+	 *
+	 * @param gameFeatures The features of the game's current state.
+	 * @return The scores for up, stay and down, or an empty array if no
+	 *         prediction could be made.
+	 */
+	double[] predict(double[] gameFeatures);
+
+	/**
+	 * Predicts the next move for a batch of game states.
+	 *
+	 * @param inputs  The features of each game state.
+	 * @param outputs The rows to write each output into.
+	 * @param from    The first row of the batch, inclusive.
+	 * @param to      The last row of the batch, exclusive.
+	 */
+	default void predictBatch(double[][] inputs, double[][] outputs, int from, int to) {
+		for (int i = from; i < to; i++) {
+			double[] output = predict(inputs[i]);
+			System.arraycopy(output, 0, outputs[i], 0, Math.min(output.length, outputs[i].length));
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package ie.atu.sw;
+
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.neural.flat.FlatNetwork;
+
+/**
+ * Runs a feed forward Encog network over a whole batch of inputs at once.
+ *
+ * Encog's own compute works one row at a time, summing every neuron as one
+ * chain of dependent additions. Here each layer is computed for the whole
+ * batch before moving to the next, four rows at a time: every weight is loaded
+ * once for the four rows, and their four sums are independent, so the
+ * processor can overlap them. Batches too small to fill one pass run through
+ * Encog's compute instead. The layout of layers, bias neurons and activation
+ * functions follows the flat network, where layer 0 is the output layer. The
+ * weights are read live, so training updates are seen.
+ *
+ * Not thread safe: the layer buffers are reused between batches.
+ */
+public class BatchedFlatNetwork {
+	private static final int BLOCK = 4; // Rows computed together per pass
+
+	private final FlatNetwork flat;
+	private final int layerCount;
+	private final int[] layerCounts; // Neurons per layer, including bias
+	private final int[] feedCounts; // Neurons per layer, excluding bias
+	private final int[] weightIndex;
+	private final double[] biasActivation;
+	private final ActivationFunction[] activations;
+
+	// Row-major per layer: neuron x of row b is at b * layerCounts[l] + x
+	private double[][] layerOutput = new double[0][];
+	private int capacity;
+
+	/**
+	 * @param flat The network to run.
+	 */
+	public BatchedFlatNetwork(FlatNetwork flat) {
+		this.flat = flat;
+		this.layerCounts = flat.getLayerCounts();
+		this.feedCounts = flat.getLayerFeedCounts();
+		this.weightIndex = flat.getWeightIndex();
+		this.biasActivation = flat.getBiasActivation();
+		this.activations = flat.getActivationFunctions();
+		this.layerCount = layerCounts.length;
+	}
+
+	/**
+	 * @return The network this runs.
+	 */
+	public FlatNetwork getFlat() {
+		return flat;
+	}
+
+	/**
+	 * Computes the outputs of a batch of rows.
+	 *
+	 * @param inputs  The inputs of each row.
+	 * @param outputs The rows to write each output into.
+	 * @param from    The first row of the batch, inclusive.
+	 * @param to      The last row of the batch, exclusive.
+	 */
+	public void compute(double[][] inputs, double[][] outputs, int from, int to) {
+		int rows = to - from;
+		if (rows < BLOCK) {
+			for (int b = from; b < to; b++) flat.compute(inputs[b], outputs[b]);
+			return;
+		}
+		ensureCapacity(rows);
+
+		int input = layerCount - 1;
+		double[] in = layerOutput[input];
+		int inSize = layerCounts[input];
+		for (int b = 0; b < rows; b++) {
+			System.arraycopy(inputs[from + b], 0, in, b * inSize, feedCounts[input]);
+		}
+
+		double[] weights = flat.getWeights();
+		for (int level = input - 1; level >= 0; level--) {
+			double[] source = layerOutput[level + 1];
+			double[] target = layerOutput[level];
+			int fromSize = layerCounts[level + 1];
+			int toSize = layerCounts[level];
+			int feed = feedCounts[level];
+
+			for (int x = 0; x < feed; x++) {
+				int w = weightIndex[level] + x * fromSize;
+				int b = 0;
+
+				// Four rows per pass: each weight is loaded once and the four sums do not wait on each other
+				for (; b + BLOCK <= rows; b += BLOCK) {
+					int f0 = b * fromSize, f1 = f0 + fromSize, f2 = f1 + fromSize, f3 = f2 + fromSize;
+					double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+					for (int y = 0; y < fromSize; y++) {
+						double weight = weights[w + y];
+						sum0 += weight * source[f0 + y];
+						sum1 += weight * source[f1 + y];
+						sum2 += weight * source[f2 + y];
+						sum3 += weight * source[f3 + y];
+					}
+					target[b * toSize + x] = sum0;
+					target[(b + 1) * toSize + x] = sum1;
+					target[(b + 2) * toSize + x] = sum2;
+					target[(b + 3) * toSize + x] = sum3;
+				}
+				for (; b < rows; b++) {
+					int f = b * fromSize;
+					double sum = 0;
+					for (int y = 0; y < fromSize; y++) {
+						sum += weights[w + y] * source[f + y];
+					}
+					target[b * toSize + x] = sum;
+				}
+			}
+			for (int b = 0; b < rows; b++) {
+				activations[level].activationFunction(target, b * toSize, feed);
+			}
+		}
+
+		double[] out = layerOutput[0];
+		for (int b = 0; b < rows; b++) {
+			System.arraycopy(out, b * layerCounts[0], outputs[from + b], 0, feedCounts[0]);
+		}
+	}
+
+	// Grows the layer buffers to hold a batch, setting the bias neuron of every row
+	private void ensureCapacity(int rows) {
+		if (rows <= capacity) return;
+		capacity = Math.max(rows, capacity * 2);
+		layerOutput = new double[layerCount][];
+		for (int l = 0; l < layerCount; l++) {
+			layerOutput[l] = new double[capacity * layerCounts[l]];
+			if (layerCounts[l] > feedCounts[l]) {
+				for (int b = 0; b < capacity; b++) {
+					layerOutput[l][b * layerCounts[l] + feedCounts[l]] = biasActivation[l];
+				}
+			}
+		}
+	}
+}
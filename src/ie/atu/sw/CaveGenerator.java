@@ -0,0 +1,65 @@
+package ie.atu.sw;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.concurrent.ThreadLocalRandom.current;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Carves successive columns of the cavern, randomly growing or shrinking the
+ * gap from one column to the next.
+ */
+public class CaveGenerator {
+	static final int MIN_TOP = 2;
+	static final int MIN_BOTTOM = 18;
+	private static final int MIN_SPACE = 4; // Smaller values will create a cave with smaller spaces
+
+	private static final byte ONE_SET = 1;
+	private static final byte ZERO_SET = 0;
+
+	private final Random random; // Null to use the thread local generator
+
+	// The gap carved into the previous column
+	private int prevTop = MIN_TOP;
+	private int prevBot = MIN_BOTTOM;
+
+	/**
+	 * Creates a generator that produces a different cave every time.
+	 */
+	public CaveGenerator() {
+		this.random = null;
+	}
+
+	/**
+	 * Creates a generator that always produces the same cave for the same seed.
+	 *
+	 * @param seed The seed of the cave.
+	 */
+	public CaveGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Fills in the next column of the cavern.
+	 *
+	 * @param next The column to overwrite.
+	 */
+	public void generate(byte[] next) {
+		Arrays.fill(next, ONE_SET); // Fill everything in
+
+		// Flip a coin to determine if we could grow or shrink the cave
+		prevTop += nextBoolean() ? 1 : -1;
+		prevBot += nextBoolean() ? 1 : -1;
+		prevTop = max(MIN_TOP, min(prevTop, prevBot - MIN_SPACE));
+		prevBot = min(MIN_BOTTOM, max(prevBot, prevTop + MIN_SPACE));
+
+		// Fill in the array with the carved area
+		Arrays.fill(next, prevTop, prevBot, ZERO_SET);
+	}
+
+	private boolean nextBoolean() {
+		return random == null ? current().nextBoolean() : random.nextBoolean();
+	}
+}
@@ -0,0 +1,64 @@
+package ie.atu.sw;
+
+/**
+ * Tracks validation passes for early stopping: the best error so far, the
+ * weights that reached it and how many passes have gone by without beating it.
+ */
+public class EarlyStopping {
+	private final int patience;
+	private int passesWithoutImprovement;
+	private double bestError = Double.POSITIVE_INFINITY;
+	private double[] bestWeights;
+
+	/**
+	 * @param patience The number of validation passes without improvement
+	 *                 after which training stops.
+	 */
+	public EarlyStopping(int patience) {
+		this.patience = patience;
+	}
+
+	/**
+	 * Records one validation pass.
+	 *
+	 * @param error   The validation error of the pass.
+	 * @param weights The weights that were validated, kept if they are the best.
+	 * @return Whether the pass improved on the best error.
+	 */
+	public boolean update(double error, double[] weights) {
+		if (error < bestError) {
+			bestError = error;
+			bestWeights = weights;
+			passesWithoutImprovement = 0;
+			return true;
+		}
+		passesWithoutImprovement++;
+		return false;
+	}
+
+	/**
+	 * @return Whether patience has run out.
+	 */
+	public boolean isStopped() {
+		return passesWithoutImprovement >= patience;
+	}
+
+	public int getPatience() {
+		return patience;
+	}
+
+	/**
+	 * @return The lowest validation error so far.
+	 */
+	public double getBestError() {
+		return bestError;
+	}
+
+	/**
+	 * @return The weights with the lowest validation error, or null before the
+	 *         first pass.
+	 */
+	public double[] getBestWeights() {
+		return bestWeights;
+	}
+}
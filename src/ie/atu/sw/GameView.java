@@ -1,9 +1,5 @@
 package ie.atu.sw;
 
-import static java.lang.Math.max;
-import static java.lang.Math.min;
-import static java.util.concurrent.ThreadLocalRandom.current;
-
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
@@ -25,21 +21,21 @@ import javax.swing.Timer;
 public class GameView extends JPanel implements ActionListener {
 	// Some constants
 	private static final long serialVersionUID = 1L;
-	private static final int MODEL_WIDTH = 30;
-	private static final int MODEL_HEIGHT = 20;
+	static final int MODEL_WIDTH = 30;
+	static final int MODEL_HEIGHT = 20;
 	private static final int SCALING_FACTOR = 30;
 
-	private static final int MIN_TOP = 2;
-	private static final int MIN_BOTTOM = 18;
-	private static final int PLAYER_COLUMN = 15;
-	private static final int TIMER_INTERVAL = 100;
+	static final int PLAYER_COLUMN = 15;
+	static final int START_ROW = 11;
+	static final int TIMER_INTERVAL = 100;
+	static final int WARM_UP_MILLIS = 1500; // The autopilot holds still until the cave scrolls in
 
-	private static final byte ONE_SET = 1;
 	private static final byte ZERO_SET = 0;
 
-	private LinkedList<double[]> predictionQueue = new LinkedList<>();
-	private static final int SMOOTHING_WINDOW = 2; // Number of predictions to consider for smoothing
+	static final int SMOOTHING_WINDOW = 2; // Number of predictions to consider for smoothing
+	private PredictionSmoother predictionWindow = new PredictionSmoother(SMOOTHING_WINDOW, 3);
 	private static final double DECISION_THRESHOLD = 0.7; // Confidence threshold
+	private static final long INFERENCE_BUDGET_MILLIS = Long.getLong("autopilot.budget", 20); // Longest wait for a prediction per tick
 
 	/*
 	 * The 30x20 game grid is implemented using a linked list of 30 elements, where
@@ -47,15 +43,14 @@ public class GameView extends JPanel implements ActionListener {
 	 */
 	private LinkedList<byte[]> model = new LinkedList<>();
 
-	// These two variables are used by the cavern generator.
-	private int prevTop = MIN_TOP;
-	private int prevBot = MIN_BOTTOM;
+	// Carves each new column of the cavern
+	private CaveGenerator generator = new CaveGenerator();
 
 	// Once the timer stops, the game is over
 	private Timer timer;
 	private long time;
 
-	private int playerRow = 11;
+	private int playerRow = START_ROW;
 	private int index = MODEL_WIDTH - 1; // Start generating at the end
 	private Dimension dim;
 
@@ -75,10 +70,23 @@ public class GameView extends JPanel implements ActionListener {
 
 	private boolean isCollectingData = false; // Data collection flag
 
-	private NeuralNetworkAutopilot autopilot;
+	// Full grid capture, null when not capturing
+	private static final int KEYFRAME_INTERVAL = 100; // Ticks between full frames in a capture
+	private GridCapture gridCapture;
+	private int[] snapshotColumns = new int[MODEL_WIDTH]; // Reused by snapshot()
+
+	private Autopilot autopilot;
+	private InferenceWatchdog watchdog; // Runs the autopilot within the tick budget
+	private int lastMove; // The last decision of the network, held if the fallback cannot see a gap
+
+	// The clock only starts once the sprites and model have loaded
+	private boolean started = false;
+	private long launchTime = System.nanoTime(); // When the application was launched
+	private boolean firstFrameReported = false;
 
 	/**
-     * Constructor for the game view.
+     * Constructor for the game view. The game clock does not start until
+     * {@link #start(Autopilot)} is called with the loaded assets.
      *
      * @param auto Boolean indicating whether autopilot is enabled.
      * @throws Exception Throws exception if initialization fails.
@@ -96,12 +104,33 @@ public class GameView extends JPanel implements ActionListener {
 
 		initModel();
 		timer = new Timer(TIMER_INTERVAL, this); // Timer calls actionPerformed() every second
-		timer.start();
+		System.out.println("Game initialized with autopilot mode: " + auto);
+	}
 
-		if (this.auto) {
-			initAutopilot(); // Initialize the autopilot when auto mode is enabled
+	/**
+     * Starts the game clock once the sprites have been set and, in autopilot
+     * mode, the model has been loaded.
+     *
+     * @param autopilot The loaded autopilot, or null when flying manually.
+     */
+	public void start(Autopilot autopilot) {
+		this.autopilot = autopilot;
+		if (autopilot != null) {
+			watchdog = new InferenceWatchdog(autopilot, INFERENCE_BUDGET_MILLIS);
 		}
-		System.out.println("Game initialized with autopilot mode: " + auto);
+		started = true;
+		timer.start();
+		System.out.printf("Assets ready after %.1fms.\n", (System.nanoTime() - launchTime) / 1e6);
+	}
+
+	/**
+     * Sets the time the application was launched, used to report the time to
+     * the first frame.
+     *
+     * @param launchTime The launch time from System.nanoTime().
+     */
+	public void setLaunchTime(long launchTime) {
+		this.launchTime = launchTime;
 	}
 
 	// Build our game grid
@@ -144,6 +173,48 @@ public class GameView extends JPanel implements ActionListener {
 		}
 	}
 
+	/**
+     * Toggles capture of the full grid at every tick to grid_capture.bin.
+     */
+	public void toggleGridCapture() {
+		try {
+			if (gridCapture == null) {
+				gridCapture = new GridCapture("grid_capture.bin", KEYFRAME_INTERVAL);
+				System.out.println("Grid capture started.");
+			} else {
+				stopGridCapture();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			gridCapture = null;
+		}
+	}
+
+	/**
+     * Closes the grid capture, if one is running, so that nothing buffered is
+     * lost when the window closes.
+     */
+	public void stopGridCapture() {
+		if (gridCapture == null) return;
+		try {
+			gridCapture.close();
+			System.out.println("Grid capture stopped after " + gridCapture.getTicks() + " ticks.");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		gridCapture = null;
+	}
+
+	// Writes out the buffered ticks of a running capture, up to the crash
+	private void flushGridCapture() {
+		if (gridCapture == null) return;
+		try {
+			gridCapture.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/**
      * Extracts features from the game state.
      *
@@ -151,24 +222,34 @@ public class GameView extends JPanel implements ActionListener {
      */
 	public double[] extractFeatures() {
 	    double[] features = new double[3]; // Simplified to one column ahead and playerRow
-	    
-	    byte[] columnAhead = model.get((PLAYER_COLUMN + 1) % MODEL_WIDTH);
-	    features[0] = countFreeSpacesAbove(columnAhead);
-	    features[1] = countFreeSpacesBelow(columnAhead);
-	    features[2] = playerRow / (double) MODEL_HEIGHT; // Normalize playerRow
+	    extractFeatures(model.get((PLAYER_COLUMN + 1) % MODEL_WIDTH), playerRow, features);
 
 	    System.out.println("Extracted features: " + Arrays.toString(features));
 	    return features;
 	}
 
+	/**
+     * Extracts features for a plane at the given row into an existing array.
+     *
+     * @param columnAhead The game column in front of the plane.
+     * @param playerRow The row of the plane.
+     * @param features The array of three features to fill in.
+     */
+	static void extractFeatures(byte[] columnAhead, int playerRow, double[] features) {
+	    features[0] = countFreeSpacesAbove(columnAhead, playerRow);
+	    features[1] = countFreeSpacesBelow(columnAhead, playerRow);
+	    features[2] = playerRow / (double) MODEL_HEIGHT; // Normalize playerRow
+	}
+
 	
 	/**
      * Counts free spaces above the player's current position.
      *
      * @param column The game column to inspect.
+     * @param playerRow The row of the plane.
      * @return Normalized count of free spaces.
      */
-	private double countFreeSpacesAbove(byte[] column) {
+	private static double countFreeSpacesAbove(byte[] column, int playerRow) {
 	    int count = 0;
 	    for (int y = playerRow; y >= 0; y--) { // Start from playerRow and move up
 	        if (column[y] == ZERO_SET) count++;
@@ -182,9 +263,10 @@ public class GameView extends JPanel implements ActionListener {
      * Counts free spaces below the player's current position.
      *
      * @param column The game column to inspect.
+     * @param playerRow The row of the plane.
      * @return Normalized count of free spaces.
      */
-	private double countFreeSpacesBelow(byte[] column) {
+	private static double countFreeSpacesBelow(byte[] column, int playerRow) {
 	    int count = 0;
 	    for (int y = playerRow; y < MODEL_HEIGHT; y++) { // Start from playerRow and move down
 	        if (column[y] == ZERO_SET) count++;
@@ -244,16 +326,6 @@ public class GameView extends JPanel implements ActionListener {
 	}
 
 
-	 /**
-     * Initializes the neural network autopilot.
-     */
-	private void initAutopilot() {
-		autopilot = new NeuralNetworkAutopilot();
-		// Assuming you have a method to load the trained network
-		autopilot.loadTrainedNetwork("model.eg");
-		System.out.println("Autopilot initialized.");
-	}
-
 	/**
      * Predicts the next move based on neural network output.
      *
@@ -261,34 +333,71 @@ public class GameView extends JPanel implements ActionListener {
      * @return The predicted move.
      */
 	private int predictMove(double[] normFeatures) {
-	    double[] output = autopilot.predict(normFeatures);
-	    predictionQueue.offer(output);
-	    System.out.println("P" + predictionQueue);
-	    if (predictionQueue.size() > SMOOTHING_WINDOW) {
-	        predictionQueue.poll();
-	    }
-
-	    double[] smoothedPrediction = new double[output.length];
-	    for (double[] pred : predictionQueue) {
-	        for (int i = 0; i < pred.length; i++) {
-	            smoothedPrediction[i] += pred[i] / predictionQueue.size();
-	            System.out.println(pred[i]);
-	        }
+	    double[] output = watchdog.predict(normFeatures);
+	    if (output == null) {
+	        int move = fallbackMove();
+	        System.out.println("Autopilot gave no prediction in time, fallback move: " + move);
+	        return move;
 	    }
-
+	    double[] smoothedPrediction = predictionWindow.add(output);
+	    System.out.println("P" + predictionWindow);
 	    System.out.println("Smoothed NN output: " + Arrays.toString(smoothedPrediction));
 
 	    int moveIndex = getMaxIndex(smoothedPrediction);
 	    System.out.println("Chosen move index: " + moveIndex);
 
+	    int move = toMove(smoothedPrediction);
+	    lastMove = move;
+	    System.out.printf("Predicted move: %s with confidence: %f\n", move == 0 ? "Stay" : (move == -1 ? "Up" : "Down"), smoothedPrediction[moveIndex]);
+	    return move;
+	}
+
+	/**
+     * Decides a move without the network when it misses its deadline: steer
+     * toward the centre of the gap in the column ahead, or repeat the last
+     * smoothed decision if there is no gap to steer for.
+     *
+     * @return -1 (Up), 0 (Stay) or 1 (Down).
+     */
+	private int fallbackMove() {
+	    int centre = gapCentre(model.get((PLAYER_COLUMN + 1) % MODEL_WIDTH), playerRow);
+	    return centre < 0 ? lastMove : Integer.signum(centre - playerRow);
+	}
+
+	/**
+     * Finds the centre of the run of free cells nearest to the plane.
+     *
+     * @param column The game column to inspect.
+     * @param playerRow The row of the plane.
+     * @return The row at the centre of the gap, or -1 if the column is solid.
+     */
+	static int gapCentre(byte[] column, int playerRow) {
+	    int best = -1, bestDistance = Integer.MAX_VALUE;
+	    for (int y = 0; y < MODEL_HEIGHT; y++) {
+	        if (column[y] != ZERO_SET) continue;
+	        int top = y;
+	        while (y + 1 < MODEL_HEIGHT && column[y + 1] == ZERO_SET) y++;
+	        int distance = playerRow < top ? top - playerRow : Math.max(0, playerRow - y);
+	        if (distance < bestDistance) {
+	            bestDistance = distance;
+	            best = (top + y) / 2;
+	        }
+	    }
+	    return best;
+	}
+
+	/**
+     * Turns a smoothed network output into a move.
+     *
+     * @param smoothedPrediction The averaged output of the network.
+     * @return -1 (Up), 0 (Stay) or 1 (Down).
+     */
+	static int toMove(double[] smoothedPrediction) {
+	    int moveIndex = getMaxIndex(smoothedPrediction);
 	    if (smoothedPrediction[moveIndex] < DECISION_THRESHOLD) {
-	        System.out.println("Predicted move: Stay with confidence: " + smoothedPrediction[moveIndex]);
 	        return 0; // Stay if below confidence threshold
-	    } else {
-	        int move = moveIndex - 1; // Maps 0->-1 (Up), 1->0 (Stay), 2->1 (Down)
-	        System.out.printf("Predicted move: %s with confidence: %f\n", move == 0 ? "Stay" : (move == -1 ? "Up" : "Down"), smoothedPrediction[moveIndex]);
-	        return move;
 	    }
+	    return moveIndex - 1; // Maps 0->-1 (Up), 1->0 (Stay), 2->1 (Down)
 	}
 
 
@@ -298,7 +407,7 @@ public class GameView extends JPanel implements ActionListener {
      * @param array The array to search.
      * @return Index of the maximum value.
      */
-	private int getMaxIndex(double[] array) {
+	private static int getMaxIndex(double[] array) {
 		int maxIndex = 0;
 		for (int i = 1; i < array.length; i++) {
 			if (array[i] > array[maxIndex]) {
@@ -320,6 +429,18 @@ public class GameView extends JPanel implements ActionListener {
 		g2.setColor(Color.WHITE);
 		g2.fillRect(0, 0, dim.width, dim.height);
 
+		if (!started) { // Still loading the sprites and model
+			g2.setFont(font);
+			g2.setColor(Color.GRAY);
+			g2.drawString("Loading...", MODEL_WIDTH / 3 * SCALING_FACTOR, MODEL_HEIGHT / 2 * SCALING_FACTOR);
+			return;
+		}
+
+		if (!firstFrameReported) {
+			firstFrameReported = true;
+			System.out.printf("Time to first frame: %.1fms\n", (System.nanoTime() - launchTime) / 1e6);
+		}
+
 		int x1 = 0, y1 = 0;
 		for (int x = 0; x < MODEL_WIDTH; x++) {
 			for (int y = 0; y < MODEL_HEIGHT; y++) {
@@ -327,8 +448,10 @@ public class GameView extends JPanel implements ActionListener {
 				y1 = y * SCALING_FACTOR;
 
 				if (model.get(x)[y] != 0) {
-					if (y == playerRow && x == PLAYER_COLUMN) {
+					if (y == playerRow && x == PLAYER_COLUMN && timer.isRunning()) { // Only once, not on every repaint after
 						timer.stop(); // Crash...
+						flushGridCapture();
+						if (watchdog != null) System.out.println("Autopilot deadlines: " + watchdog.getMetrics());
 					}
 					g2.setColor(Color.BLACK);
 					g2.fillRect(x1, y1, SCALING_FACTOR, SCALING_FACTOR);
@@ -383,7 +506,7 @@ public class GameView extends JPanel implements ActionListener {
      */
 	private void autoMove() {
 		// Check if 1.5 seconds have elapsed since the game started
-	    if (time * TIMER_INTERVAL < 1500) { // time is in ticks, TIMER_INTERVAL is the time per tick in milliseconds
+	    if (time * TIMER_INTERVAL < WARM_UP_MILLIS) { // time is in ticks, TIMER_INTERVAL is the time per tick in milliseconds
 	        return; // Do not make any move if less than 1.5 seconds have passed
 	    }
 		
@@ -426,6 +549,15 @@ public class GameView extends JPanel implements ActionListener {
 		if (auto)
 			autoMove();
 
+		if (gridCapture != null) {
+			try {
+				gridCapture.record(model, playerRow);
+			} catch (IOException ex) {
+				ex.printStackTrace();
+				toggleGridCapture(); // Stop capturing rather than fail every tick
+			}
+		}
+
 		 
 		if (time % 10 == 0) {
 			/*
@@ -443,17 +575,23 @@ public class GameView extends JPanel implements ActionListener {
 	private void generateNext() {
 		var next = model.pollFirst();
 		model.addLast(next); // Move the head to the tail
-		Arrays.fill(next, ONE_SET); // Fill everything in
-
-		// Flip a coin to determine if we could grow or shrink the cave
-		var minspace = 4; // Smaller values will create a cave with smaller spaces
-		prevTop += current().nextBoolean() ? 1 : -1;
-		prevBot += current().nextBoolean() ? 1 : -1;
-		prevTop = max(MIN_TOP, min(prevTop, prevBot - minspace));
-		prevBot = min(MIN_BOTTOM, max(prevBot, prevTop + minspace));
+		generator.generate(next); // Carve the gap into it
+	}
 
-		// Fill in the array with the carved area
-		Arrays.fill(next, prevTop, prevBot, ZERO_SET);
+	/**
+     * Writes the grid as one bit per cell into a reusable buffer: cell (x, y) is
+     * bit x * 20 + y, counting from the lowest bit of the first byte.
+     *
+     * @param buffer A buffer of at least 75 bytes to overwrite.
+     * @return The buffer.
+     */
+	public byte[] snapshot(byte[] buffer) {
+		int x = 0;
+		for (byte[] column : model) {
+			snapshotColumns[x++] = GridCapture.packColumn(column);
+		}
+		GridCapture.packFrame(snapshotColumns, buffer);
+		return buffer;
 	}
 
 	public double[] sample() {
@@ -473,9 +611,12 @@ public class GameView extends JPanel implements ActionListener {
      * Resets the game to its initial state.
      */
 	public void reset() {
+		if (!started) return; // Nothing to reset until the assets are ready
+
 		model.stream() // Zero out the grid
 				.forEach(n -> Arrays.fill(n, 0, n.length, ZERO_SET));
-		playerRow = 11; // Centre the plane
+		playerRow = START_ROW; // Centre the plane
+		lastMove = 0;
 		time = 0; // Reset the clock
 		timer.restart(); // Start the animation
 	}
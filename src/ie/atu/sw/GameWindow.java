@@ -4,16 +4,35 @@ package ie.atu.sw;
 import java.awt.FlowLayout;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 
 public class GameWindow implements KeyListener{
+	private static final int WARM_UP_PREDICTIONS = 10000; //Enough for the JIT to compile predict()
+	
 	private GameView view;
 	
 	public GameWindow() throws Exception {
+		this(System.nanoTime());
+	}
+	
+	/*
+	 * Shows the window straight away and loads the sprites and model in the
+	 * background. The game clock starts once everything has loaded.
+	 */
+	public GameWindow(long launchTime) throws Exception {
 		view = new GameView(true); //Use true to get the plane to fly in autopilot mode...
+		view.setLaunchTime(launchTime);
 		init();
-		loadSprites();
+		loadAssets();
 	}
 
 	
@@ -23,6 +42,11 @@ public class GameWindow implements KeyListener{
 	public void init() throws Exception {
 	 	var f = new JFrame("ATU - B.Sc. in Software Development");
         f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        f.addWindowListener(new WindowAdapter() {
+        	public void windowClosing(WindowEvent e) {
+        		view.stopGridCapture(); // Runs before the exit, so the capture is complete
+        	}
+        });
         f.addKeyListener(this);
         f.getContentPane().setLayout(new FlowLayout());
         f.add(view);
@@ -34,16 +58,62 @@ public class GameWindow implements KeyListener{
 	
 	
 	/*
-	 * Load the sprite graphics from the image directory
+	 * Load the sprite graphics from the image directory and the autopilot model
+	 * in parallel, then hand them to the view on the Swing thread.
 	 */
-	public void loadSprites() throws Exception {
-		var player = new Sprite("Player", 2,  "images/0.png", "images/1.png");
-		view.setSprite(player);
+	public void loadAssets() {
+		ExecutorService loader = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+			var t = new Thread(r, "asset-loader");
+			t.setDaemon(true);
+			return t;
+		});
+		
+		var player = Sprite.loadAsync(loader, "Player", 2,  "images/0.png", "images/1.png");
 		
-		var explosion = new Sprite("Explosion", 7,  "images/2.png", 
+		var explosion = Sprite.loadAsync(loader, "Explosion", 7,  "images/2.png", 
 				"images/3.png", "images/4.png", "images/5.png", 
 				"images/6.png", "images/7.png", "images/8.png");
-		view.setDyingSprite(explosion);
+		
+		CompletableFuture<Autopilot> autopilot = view.isAuto() 
+				? CompletableFuture.supplyAsync(GameWindow::loadAutopilot, loader) 
+				: CompletableFuture.completedFuture(null);
+		
+		CompletableFuture.allOf(player, explosion, autopilot).whenComplete((done, e) -> {
+			loader.shutdown();
+			SwingUtilities.invokeLater(() -> {
+				if (e != null) {
+					System.out.println("[ERROR] Yikes...problem loading assets " + e.getMessage());
+					return;
+				}
+				view.setSprite(player.join());
+				view.setDyingSprite(explosion.join());
+				view.start(autopilot.join());
+			});
+		});
+	}
+	
+	/*
+	 * Connect to a shared inference server if one was given with
+	 * -Dautopilot.server=port, otherwise load the trained network and run it
+	 * enough times to compile the inference path before the first tick.
+	 */
+	private static Autopilot loadAutopilot() {
+		var server = System.getProperty("autopilot.server");
+		if (server != null) {
+			try {
+				var client = new InferenceClient(Integer.parseInt(server));
+				System.out.println("Autopilot connected to inference server on port " + server);
+				return client;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		var autopilot = new NeuralNetworkAutopilot();
+		autopilot.loadTrainedNetwork("model.eg");
+		autopilot.warmUp(WARM_UP_PREDICTIONS);
+		System.out.println("Autopilot initialized.");
+		return autopilot;
 	}
 	
 	
@@ -53,6 +123,8 @@ public class GameWindow implements KeyListener{
 	 * UP Arrow Key: 	Moves plane up
 	 * DOWN Arrow Key: 	Moves plane down
 	 * S:				Resets and restarts the game
+	 * D:				Starts and stops recording training data
+	 * C:				Starts and stops capturing the full grid
 	 * 
 	 * Maybe consider adding options for "start sampling" and "end
 	 * sampling"
@@ -66,6 +138,9 @@ public class GameWindow implements KeyListener{
 	        case KeyEvent.VK_D: // Toggle data collection
 	            view.toggleDataCollection();
 	            break;
+	        case KeyEvent.VK_C: // Toggle full grid capture
+	            view.toggleGridCapture();
+	            break;
 	        case KeyEvent.VK_UP: // Move up
 	            view.move(-1); // Move up
 	            break;
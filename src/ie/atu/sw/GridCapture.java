@@ -0,0 +1,151 @@
+package ie.atu.sw;
+
+import static ie.atu.sw.GameView.MODEL_HEIGHT;
+import static ie.atu.sw.GameView.MODEL_WIDTH;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the full game grid at every tick in a compact binary stream.
+ *
+ * Each cell of the grid is one bit. A snapshot packs the 30 x 20 grid column by
+ * column into 600 bits (75 bytes): cell (x, y) is bit x * 20 + y, counting from
+ * the lowest bit of the first byte. Since the cave only scrolls one column per
+ * tick, most ticks are stored as the new column (3 bytes) and the player row,
+ * with a full keyframe every so often, after a reset, or whenever the grid did
+ * not simply scroll. {@link GridCaptureReader} rebuilds the frames.
+ *
+ * <pre>
+ * header:   int MAGIC, byte width, byte height, short keyframe interval
+ * keyframe: byte KEYFRAME, byte player row, 75 bytes packed grid
+ * delta:    byte DELTA, byte player row, 3 bytes packed new column
+ * </pre>
+ */
+public class GridCapture implements AutoCloseable {
+	static final int MAGIC = 0x47524431; // "GRD1"
+	static final byte KEYFRAME = 0;
+	static final byte DELTA = 1;
+
+	static final int FRAME_BYTES = (MODEL_WIDTH * MODEL_HEIGHT + 7) / 8;
+	static final int COLUMN_BYTES = (MODEL_HEIGHT + 7) / 8;
+
+	private final DataOutputStream out;
+	private final int keyframeInterval;
+
+	// The previous frame, one packed column per int, reused every tick
+	private final int[] previous = new int[MODEL_WIDTH];
+	private final int[] current = new int[MODEL_WIDTH];
+	private final byte[] frame = new byte[FRAME_BYTES];
+	private long ticks;
+
+	/**
+	 * Opens a capture stream, replacing any previous file.
+	 *
+	 * @param path             The file to write to.
+	 * @param keyframeInterval The most ticks between two full frames.
+	 * @throws IOException If the file cannot be created.
+	 */
+	public GridCapture(String path, int keyframeInterval) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+		this.keyframeInterval = keyframeInterval;
+		out.writeInt(MAGIC);
+		out.writeByte(MODEL_WIDTH);
+		out.writeByte(MODEL_HEIGHT);
+		out.writeShort(keyframeInterval);
+	}
+
+	/**
+	 * Records one tick of the game.
+	 *
+	 * @param grid      The columns of the grid, left to right.
+	 * @param playerRow The row of the plane.
+	 * @throws IOException If the stream cannot be written.
+	 */
+	public void record(List<byte[]> grid, int playerRow) throws IOException {
+		int x = 0;
+		for (byte[] column : grid) {
+			current[x++] = packColumn(column);
+		}
+
+		if (ticks++ % keyframeInterval == 0 || !scrolledByOne()) {
+			packFrame(current, frame);
+			out.writeByte(KEYFRAME);
+			out.writeByte(playerRow);
+			out.write(frame);
+		} else {
+			int column = current[MODEL_WIDTH - 1];
+			out.writeByte(DELTA);
+			out.writeByte(playerRow);
+			for (int i = 0; i < COLUMN_BYTES; i++) {
+				out.writeByte(column >>> (i * 8));
+			}
+		}
+		System.arraycopy(current, 0, previous, 0, MODEL_WIDTH);
+	}
+
+	// Whether the grid is the previous grid moved left by one column
+	private boolean scrolledByOne() {
+		for (int x = 1; x < MODEL_WIDTH; x++) {
+			if (current[x - 1] != previous[x]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of ticks recorded so far.
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Writes out any buffered ticks, so the file is readable up to now.
+	 *
+	 * @throws IOException If the stream cannot be written.
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+
+	/**
+	 * Packs one column of the grid into the low bits of an int, row 0 lowest.
+	 *
+	 * @param column The cells of the column.
+	 * @return The packed column.
+	 */
+	static int packColumn(byte[] column) {
+		int bits = 0;
+		for (int y = 0; y < column.length; y++) {
+			if (column[y] != 0) bits |= 1 << y;
+		}
+		return bits;
+	}
+
+	/**
+	 * Writes packed columns into a 75 byte frame.
+	 *
+	 * @param columns The packed columns, left to right.
+	 * @param frame   The buffer to overwrite.
+	 */
+	static void packFrame(int[] columns, byte[] frame) {
+		Arrays.fill(frame, (byte) 0);
+		for (int x = 0; x < columns.length; x++) {
+			int column = columns[x];
+			for (int y = 0; y < MODEL_HEIGHT; y++) {
+				if ((column & (1 << y)) != 0) {
+					int bit = x * MODEL_HEIGHT + y;
+					frame[bit >>> 3] |= 1 << (bit & 7);
+				}
+			}
+		}
+	}
+}
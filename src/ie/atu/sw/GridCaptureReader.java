@@ -0,0 +1,123 @@
+package ie.atu.sw;
+
+import static ie.atu.sw.GameView.MODEL_HEIGHT;
+import static ie.atu.sw.GameView.MODEL_WIDTH;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Replays a stream written by {@link GridCapture} one tick at a time. Only the
+ * packed columns are kept while reading; a full frame is built when asked for.
+ */
+public class GridCaptureReader implements AutoCloseable {
+	private final DataInputStream in;
+	private final int[] columns = new int[MODEL_WIDTH];
+	private final byte[] packed = new byte[GridCapture.FRAME_BYTES];
+	private int playerRow;
+	private long tick = -1;
+
+	/**
+	 * Opens a capture stream.
+	 *
+	 * @param path The file written by GridCapture.
+	 * @throws IOException If the file cannot be read or was not written by GridCapture.
+	 */
+	public GridCaptureReader(String path) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+		if (in.readInt() != GridCapture.MAGIC || in.readUnsignedByte() != MODEL_WIDTH
+				|| in.readUnsignedByte() != MODEL_HEIGHT) {
+			in.close();
+			throw new IOException("Not a grid capture for a " + MODEL_WIDTH + "x" + MODEL_HEIGHT + " grid: " + path);
+		}
+		in.readShort(); // Keyframe interval, not needed to replay
+	}
+
+	/**
+	 * Moves to the next tick.
+	 *
+	 * @return False at the end of the stream.
+	 * @throws IOException If the stream is corrupt.
+	 */
+	public boolean next() throws IOException {
+		int type;
+		try {
+			type = in.readByte();
+		} catch (EOFException e) {
+			return false;
+		}
+		playerRow = in.readUnsignedByte();
+
+		if (type == GridCapture.KEYFRAME) {
+			in.readFully(packed);
+			for (int x = 0; x < MODEL_WIDTH; x++) {
+				int column = 0;
+				for (int y = 0; y < MODEL_HEIGHT; y++) {
+					int bit = x * MODEL_HEIGHT + y;
+					if ((packed[bit >>> 3] & (1 << (bit & 7))) != 0) column |= 1 << y;
+				}
+				columns[x] = column;
+			}
+		} else if (type == GridCapture.DELTA) {
+			int column = 0;
+			for (int i = 0; i < GridCapture.COLUMN_BYTES; i++) {
+				column |= in.readUnsignedByte() << (i * 8);
+			}
+			System.arraycopy(columns, 1, columns, 0, MODEL_WIDTH - 1); // Scroll left
+			columns[MODEL_WIDTH - 1] = column;
+		} else {
+			throw new IOException("Corrupt grid capture at tick " + (tick + 1));
+		}
+		tick++;
+		return true;
+	}
+
+	/**
+	 * @return The number of the current tick, starting at 0.
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * @return The row of the plane at the current tick.
+	 */
+	public int getPlayerRow() {
+		return playerRow;
+	}
+
+	/**
+	 * Writes the current grid as a 75 byte snapshot, in the same layout as
+	 * {@link GameView#snapshot(byte[])}.
+	 *
+	 * @param frame The buffer to overwrite.
+	 * @return The buffer.
+	 */
+	public byte[] frame(byte[] frame) {
+		GridCapture.packFrame(columns, frame);
+		return frame;
+	}
+
+	/**
+	 * Expands the current grid into one value per cell, in the same layout as
+	 * {@link GameView#sample()}.
+	 *
+	 * @param vector The array of 600 values to overwrite.
+	 * @return The array.
+	 */
+	public double[] sample(double[] vector) {
+		for (int x = 0; x < MODEL_WIDTH; x++) {
+			for (int y = 0; y < MODEL_HEIGHT; y++) {
+				vector[x * MODEL_HEIGHT + y] = (columns[x] >>> y) & 1;
+			}
+		}
+		return vector;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,251 @@
+package ie.atu.sw;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.engine.network.activation.ActivationReLU;
+import org.encog.engine.network.activation.ActivationTANH;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.ml.train.MLTrain;
+import org.encog.neural.networks.training.propagation.Propagation;
+
+/**
+ * Searches the layer sizes, activation, early stopping patience, RPROP
+ * improvement cycles and split ratio of the autopilot for the best network.
+ *
+ * Candidates train concurrently on a pool with one thread per core, each with
+ * a single-threaded RPROP, and all share the same read-only data sets. Weak
+ * candidates are dropped by successive halving: everyone trains for a small
+ * budget of epochs, the best third carry on for three times as long, and so on
+ * until one rung is left.
+ *
+ * Candidates with different split ratios validate on different rows, so they
+ * are compared by their error on a common holdout taken from the end of the
+ * data, which no candidate trains or early-stops on. The holdout both culls
+ * each rung and ranks the final list, so its error is a selection score, not
+ * an unbiased estimate of how the winner does on new data.
+ */
+public class HyperparameterSearch {
+	private static final int[][] LAYERS = { { 64, 32, 16 }, { 64, 32 }, { 32, 16 }, { 16, 8 }, { 32 }, { 16 } };
+	private static final String[] ACTIVATIONS = { "relu", "tanh" };
+	private static final int[] PATIENCE = { 10, 20, 40 };
+	private static final int[] IMPROVEMENT_CYCLES = { 100, 500, 1000 };
+	private static final double[] SPLIT_RATIOS = { 0.7, 0.8, 0.9 };
+
+	private static final double HOLDOUT_RATIO = 0.1; // Share of rows kept back for ranking
+	private static final int MIN_EPOCHS = 25; // Budget of the first rung
+	private static final int ETA = 3; // Keep 1/ETA of the candidates each rung, train them ETA times longer
+
+	/**
+	 * One point of the search space.
+	 */
+	public record Config(int[] layers, String activation, int patience, int improvementCycles, double splitRatio) {
+		public String toString() {
+			var shape = new StringBuilder();
+			for (int n : layers) shape.append(shape.length() == 0 ? "" : "-").append(n);
+			return String.format("%s %s patience=%d cycles=%d split=%.1f", shape, activation, patience,
+					improvementCycles, splitRatio);
+		}
+	}
+
+	/**
+	 * A candidate and its training progress, only touched by one worker at a time.
+	 */
+	public static class Trial {
+		final Config config;
+		final NeuralNetworkAutopilot autopilot = new NeuralNetworkAutopilot();
+		final MLDataSet validationSet;
+		final MLTrain train;
+		final EarlyStopping stopping;
+		int epochs;
+		int rung;
+		double holdoutError = Double.POSITIVE_INFINITY;
+
+		Trial(Config config, MLDataSet[] sets) {
+			this.config = config;
+			this.validationSet = sets[1];
+			autopilot.setPatience(config.patience());
+			autopilot.setImprovementCycles(config.improvementCycles());
+			autopilot.createNetwork(activation(config.activation()), config.layers());
+			train = autopilot.createTrainer(sets[0]);
+			if (train instanceof Propagation propagation) {
+				propagation.setThreadCount(1); // The pool already keeps every core busy
+			}
+			stopping = autopilot.createEarlyStopping();
+		}
+
+		boolean stopped() {
+			return stopping.isStopped();
+		}
+
+		// Trains until the total epoch budget is reached or patience runs out, validating every epoch
+		void trainTo(int budget, MLDataSet holdout) {
+			while (epochs < budget && !stopped()) {
+				train.iteration();
+				epochs++;
+				double[] weights = autopilot.getNetwork().getFlat().getWeights();
+				stopping.update(autopilot.getNetwork().calculateError(validationSet), weights.clone());
+			}
+
+			// Score the best weights so far without disturbing the ones still training
+			var best = autopilot.getNetwork().getFlat().clone();
+			best.setWeights(stopping.getBestWeights());
+			holdoutError = best.calculateError(holdout);
+		}
+	}
+
+	private final BasicMLDataSet searchData;
+	private final MLDataSet holdout;
+	private final Map<Double, MLDataSet[]> splits = new HashMap<>(); // Shared by every trial with the same ratio
+	private final List<Trial> trials = new ArrayList<>();
+
+	/**
+	 * @param dataPath The training data file.
+	 */
+	public HyperparameterSearch(String dataPath) {
+		var loader = new NeuralNetworkAutopilot();
+		MLDataSet[] sets = loader.splitData(loader.loadTrainingData(dataPath), 1 - HOLDOUT_RATIO);
+		this.searchData = (BasicMLDataSet) sets[0];
+		this.holdout = sets[1];
+	}
+
+	/**
+	 * @return Every combination of the search space.
+	 */
+	public static List<Config> grid() {
+		var configs = new ArrayList<Config>();
+		for (int[] layers : LAYERS)
+			for (String activation : ACTIVATIONS)
+				for (int patience : PATIENCE)
+					for (int cycles : IMPROVEMENT_CYCLES)
+						for (double ratio : SPLIT_RATIOS)
+							configs.add(new Config(layers, activation, patience, cycles, ratio));
+		return configs;
+	}
+
+	/**
+	 * @param count The number of configurations to draw.
+	 * @param seed  The seed of the draw.
+	 * @return A random sample of the search space without repeats.
+	 */
+	public static List<Config> sample(int count, long seed) {
+		var configs = grid();
+		Collections.shuffle(configs, new Random(seed));
+		return configs.subList(0, Math.min(count, configs.size()));
+	}
+
+	/**
+	 * Runs successive halving over the given configurations.
+	 *
+	 * @param configs The configurations to try.
+	 * @param workers The number of candidates trained at once.
+	 * @return Every candidate ranked by holdout error, best first.
+	 */
+	public List<Trial> run(List<Config> configs, int workers) throws InterruptedException {
+		for (var config : configs) {
+			var sets = splits.computeIfAbsent(config.splitRatio(), ratio -> compactedSplit(ratio));
+			trials.add(new Trial(config, sets));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try {
+			List<Trial> alive = new ArrayList<>(trials);
+			for (int rung = 0, budget = MIN_EPOCHS; !alive.isEmpty(); rung++, budget *= ETA) {
+				final int epochs = budget;
+				var jobs = new ArrayList<Callable<Void>>();
+				for (var trial : alive) {
+					trial.rung = rung;
+					jobs.add(() -> {
+						trial.trainTo(epochs, holdout);
+						return null;
+					});
+				}
+				for (Future<Void> job : pool.invokeAll(jobs)) {
+					job.get();
+				}
+
+				alive.sort(Comparator.comparingDouble(t -> t.holdoutError));
+				System.out.printf("Rung %d: %d candidates trained to %d epochs, %d stopped early, best holdout error %.5f (%s)%n",
+						rung, alive.size(), epochs, alive.stream().filter(Trial::stopped).count(), alive.get(0).holdoutError,
+						alive.get(0).config);
+
+				// Keep the best third of those that can still improve; stopped ones stay in the ranking
+				alive.removeIf(Trial::stopped);
+				int keep = (alive.size() + ETA - 1) / ETA; // Rounded up, so a lone survivor still carries on
+				alive = new ArrayList<>(alive.subList(0, keep));
+			}
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		} finally {
+			pool.shutdownNow();
+		}
+
+		var ranked = new ArrayList<>(trials);
+		ranked.sort(Comparator.comparingDouble(t -> t.holdoutError));
+		return ranked;
+	}
+
+	// Splits the search data and compacts the training part, once per ratio
+	private MLDataSet[] compactedSplit(double ratio) {
+		MLDataSet[] sets = new NeuralNetworkAutopilot().splitData(searchData, ratio);
+		return new MLDataSet[] { new TrainingSetCompactor().compact(sets[0]), sets[1] };
+	}
+
+	/**
+	 * Writes the ranked candidates as CSV.
+	 *
+	 * @param ranked The candidates, best first.
+	 * @param path   The file to write.
+	 */
+	public static void writeLeaderboard(List<Trial> ranked, String path) {
+		try (var out = new PrintWriter(path)) {
+			out.println("rank,layers,activation,patience,improvement_cycles,split_ratio,rung,epochs,validation_error,holdout_error");
+			for (int i = 0; i < ranked.size(); i++) {
+				var t = ranked.get(i);
+				var c = t.config;
+				out.printf("%d,%s,%s,%d,%d,%.2f,%d,%d,%s,%s%n", i + 1, c.toString().split(" ")[0], c.activation(),
+						c.patience(), c.improvementCycles(), c.splitRatio(), t.rung, t.epochs, t.stopping.getBestError(),
+						t.holdoutError);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static ActivationFunction activation(String name) {
+		return name.equals("tanh") ? new ActivationTANH() : new ActivationReLU();
+	}
+
+	/**
+	 * Searches a random sample of the space, or the whole grid with "grid",
+	 * writes search_leaderboard.csv and saves the winner to model.eg.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		final int samples = 27; // Random configurations to try
+		final long seed = 42;
+
+		var configs = args.length > 0 && args[0].equals("grid") ? grid() : sample(samples, seed);
+		var search = new HyperparameterSearch("training_data.txt");
+		var ranked = search.run(configs, Runtime.getRuntime().availableProcessors());
+		writeLeaderboard(ranked, "search_leaderboard.csv");
+
+		var winner = ranked.get(0);
+		winner.autopilot.getNetwork().decodeFromArray(winner.stopping.getBestWeights());
+		winner.autopilot.saveModel("model.eg");
+		System.out.println("Best configuration: " + winner.config + " with holdout error " + winner.holdoutError);
+	}
+}
@@ -0,0 +1,111 @@
+package ie.atu.sw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * A thin client for an {@link InferenceServer}, used in place of loading the
+ * model in every process.
+ *
+ * Every read is bounded by a timeout, so a stalled server costs one timeout
+ * per prediction rather than freezing the caller. A connection that timed out
+ * may still receive the late response, so it is dropped and the next request
+ * opens a fresh one.
+ */
+public class InferenceClient implements Autopilot, AutoCloseable {
+	private static final int TIMEOUT_MILLIS = 50; // Half a game tick
+
+	private final int port;
+	private Socket socket; // Null after a failure until the next request reconnects
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	/**
+	 * Connects to an inference server on this machine.
+	 *
+	 * @param port The port the server listens on.
+	 * @throws IOException If the server cannot be reached.
+	 */
+	public InferenceClient(int port) throws IOException {
+		this.port = port;
+		connect();
+	}
+
+	private void connect() throws IOException {
+		socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), TIMEOUT_MILLIS);
+			socket.setSoTimeout(TIMEOUT_MILLIS);
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		} catch (IOException e) {
+			disconnect();
+			throw e;
+		}
+	}
+
+	// Drops a connection whose stream may be out of step with the server
+	private void disconnect() {
+		try {
+			if (socket != null) socket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		socket = null;
+	}
+
+	/**
+	 * Asks the server to predict the next move. Returns an empty array if the
+	 * server cannot be reached or does not answer in time, like an autopilot
+	 * without a network.
+	 */
+	public synchronized double[] predict(double[] gameFeatures) {
+		try {
+			if (socket == null) connect();
+			out.writeByte(InferenceServer.PREDICT);
+			out.writeByte(gameFeatures.length);
+			for (double d : gameFeatures) out.writeDouble(d);
+			out.flush();
+
+			var output = new double[in.readUnsignedByte()];
+			for (int i = 0; i < output.length; i++) output[i] = in.readDouble();
+			return output;
+		} catch (SocketTimeoutException e) {
+			System.err.println("Inference server did not answer within " + TIMEOUT_MILLIS + "ms");
+			disconnect();
+			return new double[0];
+		} catch (IOException e) {
+			System.err.println("Error reaching the inference server: " + e.getMessage());
+			disconnect();
+			return new double[0];
+		}
+	}
+
+	/**
+	 * @return The server's request, batch size and latency metrics.
+	 * @throws IOException If the server cannot be reached.
+	 */
+	public synchronized String getMetrics() throws IOException {
+		try {
+			if (socket == null) connect();
+			out.writeByte(InferenceServer.METRICS);
+			out.flush();
+			return in.readUTF();
+		} catch (IOException e) {
+			disconnect();
+			throw e;
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		if (socket != null) socket.close();
+	}
+}
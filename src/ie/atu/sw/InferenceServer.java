@@ -0,0 +1,251 @@
+package ie.atu.sw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts one model on a loopback socket and serves predictions to many game or
+ * simulation processes.
+ *
+ * Requests that arrive within a short window of each other are merged into a
+ * micro-batch and run through the network together as one batched pass, so the
+ * model is loaded once per machine rather than once per process. For a model
+ * this small a loopback round trip costs several times more than the forward
+ * pass, so a process that can hold its own copy predicts faster in-process;
+ * the server is for sharing one model, not for speed.
+ *
+ * The protocol is a stream of binary frames on one connection per client:
+ * <pre>
+ * request:  byte PREDICT, byte n, n x double features
+ * response: byte n, n x double outputs (n is 0 if no prediction was made)
+ *
+ * request:  byte METRICS
+ * response: UTF string with the server metrics
+ * </pre>
+ */
+public class InferenceServer implements AutoCloseable {
+	static final int DEFAULT_PORT = 5005;
+	static final byte PREDICT = 1;
+	static final byte METRICS = 2;
+
+	private final NeuralNetworkAutopilot autopilot;
+	private final ServerSocket serverSocket;
+	private final long windowNanos;
+	private final int maxBatch;
+
+	private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+	private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+		var t = new Thread(r, "inference-connection");
+		t.setDaemon(true);
+		return t;
+	});
+	private final Thread batcher;
+	private final AtomicInteger clients = new AtomicInteger(); // Open connections, each with at most one request queued
+	private volatile boolean running = true;
+
+	// Metrics, guarded by this
+	private long requests;
+	private long batches;
+	private int largestBatch;
+	private final LatencyStats latencies = new LatencyStats();
+
+	// A prediction waiting to be batched
+	private static class Request {
+		final double[] features;
+		final long enqueued = System.nanoTime();
+		final CountDownLatch done = new CountDownLatch(1);
+		double[] output = new double[0];
+
+		Request(double[] features) {
+			this.features = features;
+		}
+	}
+
+	/**
+	 * Starts serving a model on a loopback port.
+	 *
+	 * @param autopilot    The loaded model.
+	 * @param port         The port to listen on.
+	 * @param windowMicros How long to wait for more requests to join a batch.
+	 * @param maxBatch     The largest batch to run at once.
+	 * @throws IOException If the port cannot be opened.
+	 */
+	public InferenceServer(NeuralNetworkAutopilot autopilot, int port, long windowMicros, int maxBatch) throws IOException {
+		this.autopilot = autopilot;
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+		this.maxBatch = maxBatch;
+
+		var acceptor = new Thread(this::accept, "inference-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		batcher = new Thread(this::batch, "inference-batcher");
+		batcher.setDaemon(true);
+		batcher.start();
+	}
+
+	private void accept() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				connections.execute(() -> serve(socket));
+			} catch (IOException e) {
+				if (running) e.printStackTrace();
+			}
+		}
+	}
+
+	/*
+	 * Reads requests from one client, hands them to the batcher and writes back
+	 * each result in order.
+	 */
+	private void serve(Socket socket) {
+		clients.incrementAndGet();
+		try (socket;
+				var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+			while (running) {
+				byte op = in.readByte();
+				if (op == PREDICT) {
+					var features = new double[in.readUnsignedByte()];
+					for (int i = 0; i < features.length; i++) features[i] = in.readDouble();
+
+					var request = new Request(features);
+					if (features.length == autopilot.getInputCount()) { // Otherwise answer with no prediction
+						queue.put(request);
+						request.done.await();
+					}
+
+					out.writeByte(request.output.length);
+					for (double d : request.output) out.writeDouble(d);
+				} else if (op == METRICS) {
+					out.writeUTF(getMetrics());
+				} else {
+					System.err.println("Unknown inference request: " + op);
+					return;
+				}
+				out.flush();
+			}
+		} catch (EOFException e) {
+			// The client hung up
+		} catch (IOException e) {
+			if (running) e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			clients.decrementAndGet();
+		}
+	}
+
+	/*
+	 * Takes the next request, waits up to the window for others to join it and
+	 * runs them through the network together. Each client waits for its answer
+	 * before sending again, so once every open connection has a request in the
+	 * batch nobody else can join and the batch runs without waiting out the
+	 * window.
+	 */
+	private void batch() {
+		var batch = new ArrayList<Request>(maxBatch);
+		var inputs = new double[maxBatch][];
+		var outputs = new double[maxBatch][];
+		while (running) {
+			try {
+				batch.add(queue.take());
+				queue.drainTo(batch, maxBatch - batch.size()); // Everything already waiting joins without delay
+				long deadline = System.nanoTime() + windowNanos;
+				while (batch.size() < Math.min(maxBatch, clients.get())) {
+					long remaining = deadline - System.nanoTime();
+					Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+					if (next == null) break;
+					batch.add(next);
+				}
+
+				int n = batch.size();
+				int width = autopilot.getOutputCount();
+				for (int i = 0; i < n; i++) {
+					inputs[i] = batch.get(i).features;
+					outputs[i] = new double[width];
+				}
+				autopilot.predictBatch(inputs, outputs, 0, n);
+				complete(batch, outputs);
+			} catch (InterruptedException e) {
+				return;
+			} catch (RuntimeException e) {
+				e.printStackTrace(); // A bad request fails its batch, not the server
+				batch.forEach(r -> r.done.countDown());
+			}
+			batch.clear();
+		}
+	}
+
+	private synchronized void complete(List<Request> batch, double[][] outputs) {
+		long now = System.nanoTime();
+		for (int i = 0; i < batch.size(); i++) {
+			var request = batch.get(i);
+			request.output = outputs[i];
+			latencies.record(now - request.enqueued);
+			requests++;
+			request.done.countDown();
+		}
+		batches++;
+		largestBatch = Math.max(largestBatch, batch.size());
+	}
+
+	/**
+	 * @return Request and batch counts, mean and largest batch size and
+	 *         queueing plus inference latency percentiles over recent requests.
+	 */
+	public synchronized String getMetrics() {
+		return String.format("requests=%d batches=%d mean_batch=%.2f max_batch=%d %s", requests, batches,
+				batches == 0 ? 0 : requests / (double) batches, largestBatch, latencies.summary());
+	}
+
+	public void close() throws IOException {
+		running = false;
+		serverSocket.close();
+		batcher.interrupt();
+		connections.shutdownNow();
+	}
+
+	/**
+	 * Serves a model until the process is killed, printing metrics every few
+	 * seconds.
+	 *
+	 * @param args The model path and port, defaulting to model.eg and 5005.
+	 */
+	public static void main(String[] args) throws Exception {
+		final long windowMicros = 200; // Wait for more requests to join a batch
+		final int maxBatch = 256;
+
+		var autopilot = new NeuralNetworkAutopilot();
+		autopilot.loadTrainedNetwork(args.length > 0 ? args[0] : "model.eg");
+		autopilot.warmUp(10000);
+
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+		try (var server = new InferenceServer(autopilot, port, windowMicros, maxBatch)) {
+			System.out.println("Inference server listening on port " + port);
+			while (true) {
+				Thread.sleep(5000);
+				System.out.println(server.getMetrics());
+			}
+		}
+	}
+}
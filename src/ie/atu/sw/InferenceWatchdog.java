@@ -0,0 +1,100 @@
+package ie.atu.sw;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounds the time the game waits for the autopilot on each tick.
+ *
+ * Inference runs on a worker thread and the game waits for it no longer than
+ * the budget. A late prediction is a deadline miss: the game falls back to a
+ * cheap controller for that tick and the late result is discarded when it
+ * arrives. An empty prediction, from a missing model or an unreachable
+ * inference server, counts as a miss too. While a late prediction is still
+ * running the next tick misses straight away rather than queueing behind it,
+ * so a GC pause or a slow model can never hold up more than one budget per
+ * tick.
+ */
+public class InferenceWatchdog implements AutoCloseable {
+	private final Autopilot autopilot;
+	private final long budgetNanos;
+	private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+		var t = new Thread(r, "inference-watchdog");
+		t.setDaemon(true);
+		return t;
+	});
+	private Future<double[]> pending; // Only touched by the game thread
+
+	// Metrics, guarded by this
+	private long ticks;
+	private long misses;
+	private final LatencyStats latencies = new LatencyStats(); // Every prediction, late ones included
+
+	/**
+	 * @param autopilot    The model to run.
+	 * @param budgetMillis The longest the game waits for a prediction.
+	 */
+	public InferenceWatchdog(Autopilot autopilot, long budgetMillis) {
+		this.autopilot = autopilot;
+		this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+	}
+
+	/**
+	 * Runs the autopilot within the budget.
+	 *
+	 * @param features The features of the current game state.
+	 * @return The output of the model, or null if the deadline was missed or
+	 *         no model answered.
+	 */
+	public double[] predict(double[] features) {
+		synchronized (this) {
+			ticks++;
+		}
+		if (pending != null && !pending.isDone()) {
+			return miss(); // Still busy with a late prediction
+		}
+
+		double[] input = features.clone(); // The game may reuse its array
+		pending = worker.submit(() -> {
+			long start = System.nanoTime();
+			double[] output = autopilot.predict(input);
+			latencies.record(System.nanoTime() - start);
+			return output;
+		});
+
+		try {
+			double[] output = pending.get(budgetNanos, TimeUnit.NANOSECONDS);
+			return output.length == 0 ? miss() : output; // No model loaded or the server could not answer
+		} catch (TimeoutException e) {
+			return miss();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return miss();
+		} catch (ExecutionException e) {
+			e.printStackTrace(); // A failed prediction is treated like a late one
+			return miss();
+		}
+	}
+
+	private synchronized double[] miss() {
+		misses++;
+		return null;
+	}
+
+	/**
+	 * @return Ticks, deadline misses, the fallback rate and inference latency
+	 *         percentiles over recent predictions, including late ones.
+	 */
+	public synchronized String getMetrics() {
+		return String.format("ticks=%d misses=%d fallback_rate=%.2f%% budget_us=%.1f %s", ticks, misses,
+				ticks == 0 ? 0 : misses * 100.0 / ticks, budgetNanos / 1e3, latencies.summary());
+	}
+
+	public void close() {
+		worker.shutdownNow();
+	}
+}
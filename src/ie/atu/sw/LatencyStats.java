@@ -0,0 +1,43 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latencies in a ring buffer and reports their
+ * percentiles, shared by everything that serves predictions.
+ */
+public class LatencyStats {
+	private static final int SAMPLES = 4096; // Recent latencies kept for percentiles
+
+	private final long[] latencies = new long[SAMPLES];
+	private long count;
+
+	/**
+	 * @param nanos One latency in nanoseconds.
+	 */
+	public synchronized void record(long nanos) {
+		latencies[(int) (count++ % SAMPLES)] = nanos;
+	}
+
+	/**
+	 * @return The number of latencies recorded so far.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The p50, p99 and max latency over recent samples in microseconds.
+	 */
+	public synchronized String summary() {
+		long[] recent = Arrays.copyOf(latencies, (int) Math.min(count, SAMPLES));
+		Arrays.sort(recent);
+		return String.format("p50_us=%.1f p99_us=%.1f max_us=%.1f", percentile(recent, 0.50),
+				percentile(recent, 0.99), percentile(recent, 1.0));
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) return 0;
+		return sorted[Math.max(0, (int) Math.ceil(p * sorted.length) - 1)] / 1e3;
+	}
+}
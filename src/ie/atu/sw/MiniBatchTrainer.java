@@ -0,0 +1,261 @@
+package ie.atu.sw;
+
+import static java.util.concurrent.ThreadLocalRandom.current;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.engine.network.activation.ActivationSoftMax;
+import org.encog.ml.MLMethod;
+import org.encog.ml.TrainingImplementationType;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.train.BasicTraining;
+import org.encog.neural.flat.FlatNetwork;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.TrainingContinuation;
+
+/**
+ * Trains the autopilot's feed forward network with shuffled mini-batches using
+ * either Adam or SGD with momentum.
+ *
+ * Unlike RPROP, which needs the gradient of the whole data set before it can
+ * take a step, this takes a step after every mini-batch. Rows are read
+ * sequentially through the data set's iterator into a fixed size shuffle
+ * buffer, so a disk-backed BufferedMLDataSet is streamed rather than loaded.
+ * The weights are trained in place in the network's flat weight array, so the
+ * BasicNetwork can be saved and used for prediction as usual.
+ *
+ * The network must be a plain feed forward network. A SoftMax output layer is
+ * trained with cross entropy, anything else with mean squared error. Pair
+ * significance is used as a sample weight.
+ */
+public class MiniBatchTrainer extends BasicTraining {
+	/**
+	 * The rule used to turn a mini-batch gradient into a weight update.
+	 */
+	public enum Optimizer {
+		ADAM, SGD
+	}
+
+	private static final double LOG_FLOOR = 1e-12; // Keeps log(0) out of the cross entropy
+
+	private final BasicNetwork network;
+	private final FlatNetwork flat;
+	private final Optimizer optimizer;
+	private final int batchSize;
+
+	private double learningRate;
+	private double momentum = 0.9; // SGD momentum, and Adam's first moment decay
+	private double beta2 = 0.999; // Adam's second moment decay
+	private double epsilon = 1e-8;
+	private long step; // Number of updates so far, for Adam's bias correction
+
+	// Preallocated once and reused for every batch
+	private final double[] gradients;
+	private final double[] firstMoment; // Adam's mean, or the SGD velocity
+	private final double[] secondMoment; // Adam's uncentred variance
+	private final double[] layerDelta;
+	private final double[] actual;
+
+	// The shuffle buffer that rows are streamed through
+	private final double[][] bufferInput;
+	private final double[][] bufferIdeal;
+	private final double[] bufferWeight;
+	private final int[] order;
+
+	/**
+	 * Creates a mini-batch trainer.
+	 *
+	 * @param network    The network to train.
+	 * @param training   The training data, in memory or disk-backed.
+	 * @param optimizer  The update rule to use.
+	 * @param batchSize  The number of rows per weight update.
+	 * @param bufferSize The number of rows held in memory and shuffled at a time.
+	 */
+	public MiniBatchTrainer(BasicNetwork network, MLDataSet training, Optimizer optimizer, int batchSize, int bufferSize) {
+		super(TrainingImplementationType.Iterative);
+		setTraining(training);
+		this.network = network;
+		this.flat = network.getFlat();
+		this.optimizer = optimizer;
+		this.batchSize = batchSize;
+		this.learningRate = optimizer == Optimizer.ADAM ? 0.001 : 0.01;
+
+		int weightCount = flat.getWeights().length;
+		this.gradients = new double[weightCount];
+		this.firstMoment = new double[weightCount];
+		this.secondMoment = optimizer == Optimizer.ADAM ? new double[weightCount] : null;
+		this.layerDelta = new double[flat.getLayerOutput().length];
+		this.actual = new double[flat.getOutputCount()];
+
+		int rows = (int) Math.max(1, Math.min(bufferSize, training.getRecordCount()));
+		this.bufferInput = new double[rows][training.getInputSize()];
+		this.bufferIdeal = new double[rows][training.getIdealSize()];
+		this.bufferWeight = new double[rows];
+		this.order = new int[rows];
+	}
+
+	/**
+	 * Runs one epoch: a full pass over the training data in shuffled
+	 * mini-batches.
+	 */
+	public void iteration() {
+		preIteration();
+
+		double errorSum = 0;
+		double weightSum = 0;
+		Iterator<MLDataPair> rows = getTraining().iterator();
+		while (rows.hasNext()) {
+			// Stream the next block of rows into the shuffle buffer
+			int filled = 0;
+			while (filled < order.length && rows.hasNext()) {
+				MLDataPair pair = rows.next();
+				System.arraycopy(pair.getInputArray(), 0, bufferInput[filled], 0, bufferInput[filled].length);
+				System.arraycopy(pair.getIdealArray(), 0, bufferIdeal[filled], 0, bufferIdeal[filled].length);
+				bufferWeight[filled] = pair.getSignificance();
+				order[filled] = filled;
+				filled++;
+			}
+			shuffle(filled);
+
+			for (int from = 0; from < filled; from += batchSize) {
+				int to = Math.min(from + batchSize, filled);
+				Arrays.fill(gradients, 0);
+
+				double batchWeight = 0;
+				for (int i = from; i < to; i++) {
+					int row = order[i];
+					errorSum += backpropagate(bufferInput[row], bufferIdeal[row], bufferWeight[row]);
+					batchWeight += bufferWeight[row];
+				}
+				weightSum += batchWeight;
+
+				if (batchWeight > 0) update(batchWeight);
+			}
+		}
+
+		setError(weightSum > 0 ? errorSum / weightSum : 0);
+		postIteration();
+	}
+
+	/*
+	 * Runs one row forward, adds its weighted gradient to the gradient buffer and
+	 * returns its weighted error. The layer indexing follows Encog's flat network,
+	 * where layer 0 is the output layer.
+	 */
+	private double backpropagate(double[] input, double[] ideal, double weight) {
+		flat.compute(input, actual);
+
+		double[] weights = flat.getWeights();
+		double[] layerOutput = flat.getLayerOutput();
+		double[] layerSums = flat.getLayerSums();
+		int[] layerIndex = flat.getLayerIndex();
+		int[] layerCounts = flat.getLayerCounts();
+		int[] layerFeedCounts = flat.getLayerFeedCounts();
+		int[] weightIndex = flat.getWeightIndex();
+		ActivationFunction[] activations = flat.getActivationFunctions();
+
+		// Output deltas, the gradient of the loss with respect to each output sum
+		double error = 0;
+		boolean softMax = activations[0] instanceof ActivationSoftMax;
+		for (int i = 0; i < actual.length; i++) {
+			double difference = actual[i] - ideal[i];
+			if (softMax) {
+				layerDelta[layerIndex[0] + i] = difference * weight;
+				if (ideal[i] > 0) error -= ideal[i] * Math.log(Math.max(actual[i], LOG_FLOOR));
+			} else {
+				double derivative = activations[0].derivativeFunction(layerSums[layerIndex[0] + i], actual[i]);
+				layerDelta[layerIndex[0] + i] = difference * derivative * weight;
+				error += difference * difference / actual.length;
+			}
+		}
+
+		// Walk back towards the input, accumulating gradients and passing deltas on
+		for (int level = 0; level < layerIndex.length - 1; level++) {
+			int fromIndex = layerIndex[level + 1];
+			int fromSize = layerCounts[level + 1];
+			int toIndex = layerIndex[level];
+			int toSize = layerFeedCounts[level];
+			int index = weightIndex[level];
+			ActivationFunction activation = activations[level + 1];
+			boolean hidden = level + 1 < layerIndex.length - 1;
+
+			for (int y = 0; y < fromSize; y++) {
+				double output = layerOutput[fromIndex + y];
+				double sum = 0;
+				for (int x = 0, wi = index + y; x < toSize; x++, wi += fromSize) {
+					double delta = layerDelta[toIndex + x];
+					gradients[wi] += output * delta;
+					sum += weights[wi] * delta;
+				}
+				if (hidden) {
+					layerDelta[fromIndex + y] = sum * activation.derivativeFunction(layerSums[fromIndex + y], output);
+				}
+			}
+		}
+		return error * weight;
+	}
+
+	/*
+	 * Applies one optimiser step using the mean gradient of the batch.
+	 */
+	private void update(double batchWeight) {
+		double[] weights = flat.getWeights();
+		step++;
+
+		if (optimizer == Optimizer.ADAM) {
+			double correction1 = 1 - Math.pow(momentum, step);
+			double correction2 = 1 - Math.pow(beta2, step);
+			for (int i = 0; i < weights.length; i++) {
+				double g = gradients[i] / batchWeight;
+				firstMoment[i] = momentum * firstMoment[i] + (1 - momentum) * g;
+				secondMoment[i] = beta2 * secondMoment[i] + (1 - beta2) * g * g;
+				weights[i] -= learningRate * (firstMoment[i] / correction1) / (Math.sqrt(secondMoment[i] / correction2) + epsilon);
+			}
+		} else {
+			for (int i = 0; i < weights.length; i++) {
+				firstMoment[i] = momentum * firstMoment[i] - learningRate * gradients[i] / batchWeight;
+				weights[i] += firstMoment[i];
+			}
+		}
+	}
+
+	// Fisher-Yates shuffle of the filled part of the buffer
+	private void shuffle(int filled) {
+		for (int i = filled - 1; i > 0; i--) {
+			int j = current().nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+	}
+
+	public void setLearningRate(double learningRate) {
+		this.learningRate = learningRate;
+	}
+
+	public double getLearningRate() {
+		return learningRate;
+	}
+
+	public void setMomentum(double momentum) {
+		this.momentum = momentum;
+	}
+
+	public MLMethod getMethod() {
+		return network;
+	}
+
+	public boolean canContinue() {
+		return false;
+	}
+
+	public TrainingContinuation pause() {
+		return null;
+	}
+
+	public void resume(TrainingContinuation state) {
+	}
+}
@@ -0,0 +1,240 @@
+package ie.atu.sw;
+
+import static ie.atu.sw.GameView.TIMER_INTERVAL;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.persist.EncogDirectoryPersistence;
+
+/**
+ * Shrinks a trained autopilot by distilling it into smaller students and
+ * pruning near-zero weights, then reports the trade-off of every candidate.
+ *
+ * The features are quantised to steps of 1/20, so the whole input space is
+ * only 21 x 21 x 21 states. The teacher's output for every one of them is the
+ * transfer set, which lets a student copy the teacher's soft decisions exactly
+ * where it matters instead of relearning from the recorded hard labels.
+ *
+ * Pruned candidates are measured in their sparse form, which the game cannot
+ * load, so they are reported for comparison but only the dense candidates can
+ * be chosen and saved.
+ */
+public class ModelCompressor {
+	private static final int STEPS = 20; // Features are multiples of 1/STEPS
+	private static final double TARGET_SECONDS = 30; // The survival time the shipped model must reach
+
+	private static final int[][] STUDENTS = { { 32, 16 }, { 16, 8 }, { 16 }, { 8 }, { 4 } };
+	private static final double[] PRUNE_FRACTIONS = { 0.5, 0.8 }; // Share of the smallest weights dropped
+
+	// Survival simulation settings, the same caves for every candidate
+	private static final int AGENTS = 10;
+	private static final long MAX_TICKS = 600; // Cap each flight at one minute
+	private static final long[] SEEDS = { 1, 2, 3, 4, 5 };
+
+	private static final int LATENCY_PREDICTIONS = 200000;
+
+	/**
+	 * One model under consideration. The dense network is null for candidates
+	 * that only exist in sparse form.
+	 */
+	public record Candidate(String name, Autopilot autopilot, BasicNetwork dense, int weights, long bytes) {}
+
+	/**
+	 * The measured trade-off of a candidate.
+	 */
+	public record Row(Candidate candidate, double nanosPerPrediction, double agreement, double medianSeconds) {}
+
+	private final NeuralNetworkAutopilot teacher;
+	private final MLDataSet recorded; // Inputs the game actually produces, labelled by the teacher
+	private final MLDataSet transfer; // Every quantised state, labelled by the teacher
+
+	/**
+	 * @param teacher       The trained model to compress.
+	 * @param recordedPath  A training file whose inputs are used to check fidelity.
+	 */
+	public ModelCompressor(NeuralNetworkAutopilot teacher, String recordedPath) {
+		this.teacher = teacher;
+		this.recorded = label(teacher.loadTrainingData(recordedPath));
+		this.transfer = transferSet();
+	}
+
+	// Every quantised game state labelled with the teacher's soft output
+	private MLDataSet transferSet() {
+		var inputs = new ArrayList<double[]>();
+		for (int above = 0; above <= STEPS; above++) {
+			for (int below = 0; below <= STEPS; below++) {
+				for (int row = 0; row <= STEPS; row++) {
+					inputs.add(new double[] { above / (double) STEPS, below / (double) STEPS, row / (double) STEPS });
+				}
+			}
+		}
+		return label(new BasicMLDataSet(inputs.toArray(new double[0][]), new double[inputs.size()][0]));
+	}
+
+	// Replaces the ideal of every row with the teacher's output
+	private MLDataSet label(MLDataSet data) {
+		var inputs = new ArrayList<double[]>();
+		var ideals = new ArrayList<double[]>();
+		for (MLDataPair pair : data) {
+			inputs.add(pair.getInputArray());
+			ideals.add(teacher.predict(pair.getInputArray()));
+		}
+		return new BasicMLDataSet(inputs.toArray(new double[0][]), ideals.toArray(new double[0][]));
+	}
+
+	/**
+	 * Trains a student of the given shape on the teacher's soft outputs.
+	 *
+	 * @param hiddenLayers The hidden layer sizes of the student.
+	 * @return The trained student.
+	 */
+	public NeuralNetworkAutopilot distil(int... hiddenLayers) {
+		var student = new NeuralNetworkAutopilot();
+		student.setTelemetryPath("distill_" + shape(hiddenLayers) + ".jsonl");
+		student.createNetwork(hiddenLayers);
+		student.trainNetworkMiniBatch(transfer, recorded, MiniBatchTrainer.Optimizer.ADAM);
+		return student;
+	}
+
+	/**
+	 * Builds the candidates, measures them and prints the Pareto table.
+	 *
+	 * @return The smallest dense candidate that clears the survival target, or
+	 *         null.
+	 */
+	public Row compareCandidates() {
+		var candidates = new ArrayList<Candidate>();
+		addWithPruned(candidates, "teacher " + shape(hidden(teacher.getNetwork())), teacher.getNetwork(), teacher);
+		for (int[] shape : STUDENTS) {
+			var student = distil(shape);
+			addWithPruned(candidates, "student " + shape(shape), student.getNetwork(), student);
+		}
+
+		Map<String, Double> survival = simulate(candidates);
+		var rows = new ArrayList<Row>();
+		for (var c : candidates) {
+			rows.add(new Row(c, latency(c.autopilot()), agreement(c.autopilot()), survival.get(c.name())));
+		}
+		rows.sort((a, b) -> Long.compare(a.candidate().bytes(), b.candidate().bytes()));
+
+		System.out.printf("%-24s %8s %10s %10s %10s %10s %7s %9s%n", "candidate", "weights", "bytes", "ns/pred",
+				"agreement", "median s", "pareto", "loadable");
+		Row chosen = null;
+		for (var row : rows) {
+			var c = row.candidate();
+			System.out.printf("%-24s %8d %10d %10.1f %9.1f%% %10.1f %7s %9s%n", c.name(), c.weights(), c.bytes(),
+					row.nanosPerPrediction(), row.agreement() * 100, row.medianSeconds(), isPareto(row, rows) ? "*" : "",
+					c.dense() != null ? "yes" : "no");
+			if (chosen == null && c.dense() != null && row.medianSeconds() >= TARGET_SECONDS) chosen = row;
+		}
+		return chosen;
+	}
+
+	// Adds a dense network and its pruned variants, which only run in sparse form
+	private void addWithPruned(List<Candidate> candidates, String name, BasicNetwork network, Autopilot dense) {
+		int weights = network.getFlat().getWeights().length;
+		candidates.add(new Candidate(name, dense, network, weights, weights * (long) Double.BYTES));
+
+		double[] magnitudes = Arrays.stream(network.getFlat().getWeights()).map(Math::abs).sorted().toArray();
+		for (double fraction : PRUNE_FRACTIONS) {
+			double threshold = magnitudes[(int) (fraction * magnitudes.length) - 1];
+			var sparse = new SparseNetwork(network.getFlat(), threshold);
+			candidates.add(new Candidate(name + String.format(" -%d%%", (int) (fraction * 100)), sparse, null,
+					sparse.getNonZeroCount(), sparse.getWeightBytes()));
+		}
+	}
+
+	// Median survival of every candidate's planes over the same set of caves
+	private static Map<String, Double> simulate(List<Candidate> candidates) {
+		var evaluator = new PopulationEvaluator();
+		candidates.forEach(c -> evaluator.add(c.name(), c.autopilot(), AGENTS));
+
+		Map<String, List<Long>> ticks = new HashMap<>();
+		for (long seed : SEEDS) {
+			for (var result : evaluator.evaluate(MAX_TICKS, seed)) {
+				ticks.computeIfAbsent(result.name(), k -> new ArrayList<>()).add(result.ticks());
+			}
+		}
+
+		Map<String, Double> median = new HashMap<>();
+		ticks.forEach((name, t) -> {
+			t.sort(null);
+			median.put(name, t.get(t.size() / 2) * (TIMER_INTERVAL / 1000.0d));
+		});
+		return median;
+	}
+
+	// Mean wall time of one prediction over the quantised state space
+	private double latency(Autopilot autopilot) {
+		int n = (int) transfer.getRecordCount();
+		for (int i = 0; i < LATENCY_PREDICTIONS / 10; i++) autopilot.predict(transfer.get(i % n).getInputArray()); // Warm up
+
+		long start = System.nanoTime();
+		for (int i = 0; i < LATENCY_PREDICTIONS; i++) {
+			autopilot.predict(transfer.get(i % n).getInputArray());
+		}
+		return (System.nanoTime() - start) / (double) LATENCY_PREDICTIONS;
+	}
+
+	// Share of recorded states where the candidate picks the teacher's move
+	private double agreement(Autopilot autopilot) {
+		int same = 0;
+		for (MLDataPair pair : recorded) {
+			if (GameView.toMove(autopilot.predict(pair.getInputArray())) == GameView.toMove(pair.getIdealArray())) same++;
+		}
+		return same / (double) recorded.getRecordCount();
+	}
+
+	// Nothing else is at least as fast, as small and survives as long while better at one
+	private static boolean isPareto(Row row, List<Row> rows) {
+		for (var other : rows) {
+			boolean noWorse = other.nanosPerPrediction() <= row.nanosPerPrediction()
+					&& other.candidate().bytes() <= row.candidate().bytes()
+					&& other.medianSeconds() >= row.medianSeconds();
+			boolean better = other.nanosPerPrediction() < row.nanosPerPrediction()
+					|| other.candidate().bytes() < row.candidate().bytes()
+					|| other.medianSeconds() > row.medianSeconds();
+			if (noWorse && better) return false;
+		}
+		return true;
+	}
+
+	private static int[] hidden(BasicNetwork network) {
+		int[] layers = new int[network.getLayerCount() - 2];
+		for (int i = 0; i < layers.length; i++) layers[i] = network.getLayerNeuronCount(i + 1);
+		return layers;
+	}
+
+	private static String shape(int... hiddenLayers) {
+		return String.join("-", Arrays.stream(hiddenLayers).mapToObj(Integer::toString).toArray(String[]::new));
+	}
+
+	/**
+	 * Compresses model.eg and saves the smallest candidate that clears the
+	 * survival target to model_small.eg.
+	 */
+	public static void main(String[] args) {
+		var teacher = new NeuralNetworkAutopilot();
+		teacher.loadTrainedNetwork(args.length > 0 ? args[0] : "model.eg");
+		if (teacher.getNetwork() == null) return; // Already reported by the loader
+
+		var compressor = new ModelCompressor(teacher, "training_data.txt");
+		var chosen = compressor.compareCandidates();
+		if (chosen == null) {
+			System.out.println("No candidate reached the " + TARGET_SECONDS + "s target.");
+			return;
+		}
+
+		EncogDirectoryPersistence.saveObject(new File("model_small.eg"), chosen.candidate().dense());
+		System.out.println("Saved " + chosen.candidate().name() + " to model_small.eg");
+	}
+}
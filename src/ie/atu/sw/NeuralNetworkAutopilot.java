@@ -2,18 +2,26 @@ package ie.atu.sw;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.encog.engine.network.activation.ActivationFunction;
 import org.encog.engine.network.activation.ActivationReLU;
 import org.encog.engine.network.activation.ActivationSoftMax;
 import org.encog.ml.data.MLData;
 import org.encog.ml.data.MLDataSet;
 import org.encog.ml.data.basic.BasicMLData;
 import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.ml.data.buffer.BufferedMLDataSet;
 import org.encog.ml.train.MLTrain;
 import org.encog.ml.train.strategy.RequiredImprovementStrategy;
+import org.encog.neural.flat.FlatNetwork;
 import org.encog.neural.networks.BasicNetwork;
 import org.encog.neural.networks.layers.BasicLayer;
 import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
@@ -24,27 +32,55 @@ import org.encog.persist.EncogDirectoryPersistence;
  * for autopilot in a game scenario.
  */
 
-public class NeuralNetworkAutopilot {
+public class NeuralNetworkAutopilot implements Autopilot {
+
+	private static final int BATCH_SIZE = 64; // Rows per mini-batch update
+	private static final int SHUFFLE_BUFFER_ROWS = 1 << 16; // Rows shuffled in memory at a time when streaming
 
 	private BasicNetwork network;
+	private BatchedFlatNetwork batched; // Batch buffers for the current network, created on first use
+	private int validationInterval = 1; // Epochs between validation passes
+	private int patience = 20; // Patience for early stopping, counted in validation passes
+	private int improvementCycles = 500; // RPROP cycles without improvement before the weights are reset
+	private String telemetryPath = "training_telemetry.jsonl";
+
+	// A snapshot of the weights being validated in the background
+	private record PendingValidation(int epoch, FlatNetwork snapshot, Future<double[]> result) {}
 	
 	/**
      * Creates the neural network with a specified architecture.
      */
 
 	public void createNetwork() {
+	    createNetwork(64, 32, 16);
+	}
+
+	/**
+     * Creates a network with the given ReLU hidden layers between the three
+     * feature inputs and the three SoftMax move outputs.
+     *
+     * @param hiddenLayers The number of neurons in each hidden layer.
+     */
+	public void createNetwork(int... hiddenLayers) {
+	    createNetwork(new ActivationReLU(), hiddenLayers);
+	}
+
+	/**
+     * Creates a network with the given hidden layers between the three feature
+     * inputs and the three SoftMax move outputs.
+     *
+     * @param activation   The activation function of the hidden layers.
+     * @param hiddenLayers The number of neurons in each hidden layer.
+     */
+	public void createNetwork(ActivationFunction activation, int... hiddenLayers) {
 	    network = new BasicNetwork();
 	    // Input layer with 4 inputs. No activation function needed as it's the input layer.
 	    network.addLayer(new BasicLayer(null, true, 3));
 
-	    // First hidden layer with more neurons to capture complex patterns. Using LeakyReLU for better gradient flow.
-	    network.addLayer(new BasicLayer(new ActivationReLU(), true, 64));
-
-	    // Adding an additional hidden layer can help model complexity, using fewer neurons to consolidate learning.
-	    network.addLayer(new BasicLayer(new ActivationReLU(), true, 32));
-
-	    // Second hidden layer as a refinement layer before the output, again using LeakyReLU.
-	    network.addLayer(new BasicLayer(new ActivationReLU(), true, 16));
+	    // Hidden layers, widest first, to capture and then consolidate the patterns. ReLU by default for better gradient flow.
+	    for (int neurons : hiddenLayers) {
+	        network.addLayer(new BasicLayer(activation.clone(), true, neurons));
+	    }
 
 	    // Output layer with 3 outputs. SoftMax is suitable for classification where outputs represent probabilities.
 	    network.addLayer(new BasicLayer(new ActivationSoftMax(), false, 3));
@@ -57,43 +93,171 @@ public class NeuralNetworkAutopilot {
 	/**
      * Trains the network using the given training and validation datasets.
      *
+     * Validation runs on a background thread against a snapshot of the weights
+     * taken every validationInterval epochs, so training carries on while it is
+     * scored. Results are used oldest first as they arrive, which may be a few
+     * epochs late, and the best validated weights are restored at the end.
+     * Per-epoch telemetry is written to the telemetry file.
+     *
      * @param trainingSet   The training dataset.
      * @param validationSet The validation dataset.
      */
 
 	public void trainNetwork(MLDataSet trainingSet, MLDataSet validationSet) {
+        trainNetwork(createTrainer(trainingSet), trainingSet, validationSet);
+    }
+
+	/**
+     * Creates the RPROP trainer used for this network.
+     *
+     * @param trainingSet The training dataset.
+     * @return The trainer, with the required improvement strategy attached.
+     */
+	public MLTrain createTrainer(MLDataSet trainingSet) {
         MLTrain train = new ResilientPropagation(network, trainingSet);
-        train.addStrategy(new RequiredImprovementStrategy(500));
+        if (trainingSet instanceof WeightedMLDataSet weighted) {
+            // Report the error of the raw rows, ahead of the strategy that compares it to fixed thresholds
+            train.addStrategy(new WeightedMLDataSet.ErrorStrategy(weighted));
+        }
+        train.addStrategy(new RequiredImprovementStrategy(improvementCycles));
+        return train;
+    }
 
+	/**
+     * Trains the network with shuffled mini-batches instead of RPROP. The
+     * training set may be a disk-backed BufferedMLDataSet, which is streamed.
+     *
+     * @param trainingSet   The training dataset.
+     * @param validationSet The validation dataset.
+     * @param optimizer     The mini-batch update rule.
+     */
+	public void trainNetworkMiniBatch(MLDataSet trainingSet, MLDataSet validationSet, MiniBatchTrainer.Optimizer optimizer) {
+        trainNetwork(new MiniBatchTrainer(network, trainingSet, optimizer, BATCH_SIZE, SHUFFLE_BUFFER_ROWS), trainingSet, validationSet);
+    }
+
+	/*
+	 * Runs the training loop shared by every trainer: one iteration per epoch,
+	 * background validation, early stopping and telemetry.
+	 */
+	private void trainNetwork(MLTrain train, MLDataSet trainingSet, MLDataSet validationSet) {
         final int maxEpochs = 10000; // Maximum number of epochs for training
-        double bestValidationError = Double.POSITIVE_INFINITY;
-        int patience = 20; // Patience for early stopping
-        int patienceCounter = 0; // Counter for epochs without validation error improvement
-
-        for (int epoch = 1; epoch <= maxEpochs && patienceCounter < patience; epoch++) {
-            train.iteration();
-            System.out.println("Epoch #" + epoch + " Error:" + train.getError());
-
-            double validationError = network.calculateError(validationSet);
-            System.out.println("Validation Error: " + validationError);
-
-            if (validationError < bestValidationError) {
-                bestValidationError = validationError;
-                patienceCounter = 0; // Reset counter if validation error improved
-            } else {
-                patienceCounter++; // Increment counter if no improvement
+        final int maxPending = 2; // Validation passes in flight before training waits for one
+        EarlyStopping stopping = createEarlyStopping();
+        int epoch = 0;
+
+        ExecutorService validator = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "validation");
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<PendingValidation> pending = new ArrayDeque<>();
+
+        try (TrainingTelemetry telemetry = new TrainingTelemetry(telemetryPath)) {
+            while (!stopping.isStopped() && (epoch < maxEpochs || !pending.isEmpty())) {
+                if (epoch < maxEpochs) {
+                    epoch++;
+                    long start = System.nanoTime();
+                    train.iteration();
+                    telemetry.epoch(epoch, System.nanoTime() - start, trainingSet.getRecordCount(), train.getError(),
+                            train instanceof ResilientPropagation rprop ? rprop.getUpdateValues() : null);
+
+                    if (epoch % validationInterval == 0 || epoch == maxEpochs) {
+                        FlatNetwork snapshot = network.getFlat().clone();
+                        snapshot.setWeights(snapshot.getWeights().clone()); // The clone shares the live weights
+                        pending.add(new PendingValidation(epoch, snapshot, validator.submit(() -> {
+                            long validationStart = System.nanoTime();
+                            double error = snapshot.calculateError(validationSet);
+                            return new double[] { error, System.nanoTime() - validationStart };
+                        })));
+                    }
+                }
+
+                // Use the results that are ready, waiting only when the validator falls behind
+                while (!pending.isEmpty() && !stopping.isStopped()
+                        && (pending.peek().result().isDone() || pending.size() > maxPending || epoch == maxEpochs)) {
+                    PendingValidation validation = pending.poll();
+                    double[] result = awaitValidation(validation.result());
+                    boolean improved = stopping.update(result[0], validation.snapshot().getWeights());
+                    telemetry.validation(validation.epoch(), epoch, (long) result[1], result[0], improved);
+                }
             }
+        } finally {
+            validator.shutdownNow();
         }
         train.finishTraining();
 
-        if (patienceCounter >= patience) {
-            System.out.println("Early stopping triggered after " + patience + " epochs without improvement.");
+        if (stopping.getBestWeights() != null) {
+            network.decodeFromArray(stopping.getBestWeights());
         }
 
-        // Consider saving the model here if it's the best one
+        if (stopping.isStopped()) {
+            System.out.println("Early stopping triggered after " + patience + " validations without improvement.");
+        }
+        System.out.println("Trained for " + epoch + " epochs, best validation error: " + stopping.getBestError()
+                + ". Telemetry written to: " + telemetryPath);
     }
 
-	
+	/*
+	 * Waits for a background validation pass, treating a failed pass as no
+	 * improvement.
+	 */
+	private static double[] awaitValidation(Future<double[]> result) {
+	    try {
+	        return result.get();
+	    } catch (InterruptedException e) {
+	        Thread.currentThread().interrupt();
+	    } catch (ExecutionException e) {
+	        e.printStackTrace();
+	    }
+	    return new double[] { Double.POSITIVE_INFINITY, 0 };
+	}
+
+	/**
+     * Sets how many epochs pass between validation runs.
+     *
+     * @param validationInterval The number of epochs, at least one.
+     */
+	public void setValidationInterval(int validationInterval) {
+	    this.validationInterval = Math.max(1, validationInterval);
+	}
+
+	/**
+     * Creates the early stopping tracker used for this network, with the
+     * configured patience.
+     *
+     * @return A tracker with no validation passes recorded.
+     */
+	public EarlyStopping createEarlyStopping() {
+	    return new EarlyStopping(patience);
+	}
+
+	/**
+     * Sets how many validation passes without improvement stop training.
+     *
+     * @param patience The number of validation passes.
+     */
+	public void setPatience(int patience) {
+	    this.patience = patience;
+	}
+
+	/**
+     * Sets how many RPROP cycles without improvement make the required
+     * improvement strategy reset the weights.
+     *
+     * @param improvementCycles The number of cycles.
+     */
+	public void setImprovementCycles(int improvementCycles) {
+	    this.improvementCycles = improvementCycles;
+	}
+
+	/**
+     * Sets the file that training telemetry is written to.
+     *
+     * @param telemetryPath The path of the JSON lines file.
+     */
+	public void setTelemetryPath(String telemetryPath) {
+	    this.telemetryPath = telemetryPath;
+	}
 
 	public BasicMLDataSet loadTrainingData(String filePath) {
 		ArrayList<double[]> inputData = new ArrayList<>();
@@ -117,6 +281,54 @@ public class NeuralNetworkAutopilot {
 		return new BasicMLDataSet(inputArray, idealArray);
 	}
 
+	/**
+     * Converts a text training file into Encog's binary format, split into a
+     * training file and a validation file, one line at a time so that captures
+     * larger than memory can be used.
+     *
+     * @param filePath       The text file, one input:ideal row per line.
+     * @param trainingPath   The binary file for the training rows.
+     * @param validationPath The binary file for the validation rows.
+     * @param trainingRatio  The ratio of rows to use for training.
+     * @return The training and validation datasets, backed by the binary files.
+     */
+	public MLDataSet[] convertTrainingData(String filePath, String trainingPath, String validationPath, double trainingRatio) {
+		long totalSize = 0;
+		int inputSize = 0, idealSize = 0;
+		try (Scanner scanner = new Scanner(new File(filePath))) {
+			while (scanner.hasNextLine()) {
+				String line = scanner.nextLine();
+				if (totalSize++ == 0) {
+					String[] parts = line.split(":");
+					inputSize = parts[0].split(",").length;
+					idealSize = parts[1].split(",").length;
+				}
+			}
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		}
+		long trainingSize = (long) (totalSize * trainingRatio);
+
+		BufferedMLDataSet trainingSet = new BufferedMLDataSet(new File(trainingPath));
+		BufferedMLDataSet validationSet = new BufferedMLDataSet(new File(validationPath));
+		trainingSet.beginLoad(inputSize, idealSize);
+		validationSet.beginLoad(inputSize, idealSize);
+		try (Scanner scanner = new Scanner(new File(filePath))) {
+			for (long i = 0; scanner.hasNextLine(); i++) {
+				String[] parts = scanner.nextLine().split(":");
+				double[] inputs = Arrays.stream(parts[0].split(",")).mapToDouble(Double::parseDouble).toArray();
+				double[] outputs = Arrays.stream(parts[1].split(",")).mapToDouble(Double::parseDouble).toArray();
+				(i < trainingSize ? trainingSet : validationSet).add(new BasicMLData(inputs), new BasicMLData(outputs));
+			}
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		}
+		trainingSet.endLoad();
+		validationSet.endLoad();
+
+		return new MLDataSet[]{trainingSet, validationSet};
+	}
+
 	/**
      * Splits the dataset into training and validation sets based on a given ratio.
      *
@@ -153,9 +365,13 @@ public class NeuralNetworkAutopilot {
 	public void setupAndTrain() {
 	    // Load training data from file
 	    MLDataSet[] splitSets = splitData(loadTrainingData("training_data.txt"), 0.8); // Only pass the training ratio
-	    MLDataSet trainingSet = splitSets[0];
 	    MLDataSet validationSet = splitSets[1];
 
+	    // Collapse repeated rows so each epoch only visits the distinct states
+	    TrainingSetCompactor compactor = new TrainingSetCompactor();
+	    MLDataSet trainingSet = compactor.compact(splitSets[0]);
+	    System.out.println("Compacted training data from " + compactor.getRowsIn() + " to " + compactor.getRowsOut() + " rows.");
+
 	    // Create and initialize the network structure
 	    createNetwork();
 
@@ -166,6 +382,24 @@ public class NeuralNetworkAutopilot {
 	    System.out.println("Network trained and model saved.");
 	}
 	
+	/**
+     * Trains with mini-batches streamed from disk rather than RPROP over data
+     * held in memory.
+     *
+     * @param optimizer The mini-batch update rule.
+     */
+	public void setupAndTrainStreaming(MiniBatchTrainer.Optimizer optimizer) {
+	    MLDataSet[] splitSets = convertTrainingData("training_data.txt", "training_data.egb", "validation_data.egb", 0.8);
+
+	    createNetwork();
+	    trainNetworkMiniBatch(splitSets[0], splitSets[1], optimizer);
+	    splitSets[0].close();
+	    splitSets[1].close();
+
+	    saveModel("model.eg");
+	    System.out.println("Network trained and model saved.");
+	}
+
 	/**
      * Saves the trained model to a specified path.
      *
@@ -218,6 +452,65 @@ public class NeuralNetworkAutopilot {
 	    return output.getData();
 	}
 
+	/**
+     * @return The loaded or created network, or null if there is none.
+     */
+	public BasicNetwork getNetwork() {
+	    return network;
+	}
+
+	/**
+     * @return The number of features the network expects, or 0 if no network is loaded.
+     */
+	public int getInputCount() {
+	    return network == null ? 0 : network.getInputCount();
+	}
+
+	/**
+     * @return The number of scores the network produces, or 0 if no network is loaded.
+     */
+	public int getOutputCount() {
+	    return network == null ? 0 : network.getOutputCount();
+	}
+
+	/**
+     * Runs the inference path over a spread of game states so the JIT has
+     * compiled it before the first real tick needs a decision.
+     *
+     * @param iterations The number of predictions to make.
+     */
+	public void warmUp(int iterations) {
+	    if (this.network == null) return;
+	    double[] features = new double[network.getInputCount()];
+	    for (int i = 0; i < iterations; i++) {
+	        for (int j = 0; j < features.length; j++) {
+	            features[j] = ((i + j) % 21) / 20.0; // Walk the quantised feature grid
+	        }
+	        predict(features);
+	    }
+	}
+
+	/**
+     * Predicts the next move for a batch of game states in one pass, layer by
+     * layer across the batch, writing into preallocated output rows instead
+     * of allocating per call.
+     *
+     * @param inputs  The features of each game state.
+     * @param outputs The rows to write each network output into.
+     * @param from    The first row of the batch, inclusive.
+     * @param to      The last row of the batch, exclusive.
+     */
+	public void predictBatch(double[][] inputs, double[][] outputs, int from, int to) {
+	    if (this.network == null) {
+	        System.err.println("Network is not initialized.");
+	        return;
+	    }
+	    if (batched == null || batched.getFlat() != network.getFlat()) {
+	        batched = new BatchedFlatNetwork(network.getFlat());
+	    }
+	    batched.compute(inputs, outputs, from, to);
+	}
+
 
 
 
@@ -237,7 +530,11 @@ public class NeuralNetworkAutopilot {
 
 	public static void main(String[] args) {
 		NeuralNetworkAutopilot autopilot = new NeuralNetworkAutopilot();
-		autopilot.setupAndTrain();
+		if (args.length > 0) { // "adam" or "sgd" to stream mini-batches from disk
+			autopilot.setupAndTrainStreaming(MiniBatchTrainer.Optimizer.valueOf(args[0].toUpperCase()));
+		} else {
+			autopilot.setupAndTrain();
+		}
 	}
 
 }
\ No newline at end of file
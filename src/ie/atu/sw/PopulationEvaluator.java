@@ -0,0 +1,207 @@
+package ie.atu.sw;
+
+import static ie.atu.sw.GameView.MODEL_HEIGHT;
+import static ie.atu.sw.GameView.MODEL_WIDTH;
+import static ie.atu.sw.GameView.PLAYER_COLUMN;
+import static ie.atu.sw.GameView.START_ROW;
+import static ie.atu.sw.GameView.TIMER_INTERVAL;
+import static ie.atu.sw.GameView.WARM_UP_MILLIS;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Flies a whole population of autopilots through the same cave in lockstep,
+ * without a window or a timer.
+ *
+ * Every tick the cave advances once for everyone, the features of all live
+ * planes are gathered into one batch, each candidate model runs over its slice
+ * of the batch, and planes are retired as they crash. Everyone sees exactly the
+ * same cave, so the survival times can be ranked like for like.
+ */
+public class PopulationEvaluator {
+	private static final int FEATURES = 3;
+	private static final int OUTPUTS = 3;
+
+	private final List<String> names = new ArrayList<>();
+	private final List<Autopilot> candidates = new ArrayList<>();
+	private final List<Integer> populations = new ArrayList<>();
+
+	/**
+	 * The result of one plane.
+	 *
+	 * @param name  The name of the candidate model flying the plane.
+	 * @param agent The number of the plane within its candidate.
+	 * @param ticks The number of ticks survived.
+	 */
+	public record Result(String name, int agent, long ticks) {
+		public double seconds() {
+			return ticks * (TIMER_INTERVAL / 1000.0d);
+		}
+	}
+
+	/**
+	 * Adds a candidate model flying one or more planes. The first plane starts
+	 * in the centre like the game; any others start on random rows of the first
+	 * gap they meet so they do not all fly the same path. Plane i of every
+	 * candidate starts on the same row, so planes compare like for like.
+	 *
+	 * @param name      The name to report the candidate under.
+	 * @param candidate The loaded model.
+	 * @param agents    The number of planes it flies.
+	 */
+	public void add(String name, Autopilot candidate, int agents) {
+		names.add(name);
+		candidates.add(candidate);
+		populations.add(agents);
+	}
+
+	/**
+	 * Flies every plane until it crashes or the tick limit is reached.
+	 *
+	 * @param maxTicks The number of ticks after which survivors stop.
+	 * @param seed     The seed of the shared cave and of the start rows.
+	 * @return The results of every plane, longest survivor first.
+	 */
+	public List<Result> evaluate(long maxTicks, long seed) {
+		var random = new Random(seed);
+		var generator = new CaveGenerator(seed);
+		var cave = new LinkedList<byte[]>();
+		for (int i = 0; i < MODEL_WIDTH; i++) {
+			cave.add(new byte[MODEL_HEIGHT]);
+		}
+
+		// Where in the first gap plane i of every candidate starts, drawn once per plane number
+		int maxAgents = populations.stream().mapToInt(Integer::intValue).max().orElse(0);
+		double[] startOffsets = new double[maxAgents];
+		for (int i = 1; i < maxAgents; i++) startOffsets[i] = random.nextDouble();
+
+		// Lay out the planes so that each candidate owns a contiguous slice
+		int total = populations.stream().mapToInt(Integer::intValue).sum();
+		int[] owner = new int[total];
+		int[] agent = new int[total];
+		int[] rows = new int[total];
+		long[] survived = new long[total];
+		PredictionSmoother[] smoothers = new PredictionSmoother[total]; // Per plane, reused every tick
+		for (int c = 0, a = 0; c < candidates.size(); c++) {
+			for (int i = 0; i < populations.get(c); i++, a++) {
+				owner[a] = c;
+				agent[a] = i;
+				smoothers[a] = new PredictionSmoother(GameView.SMOOTHING_WINDOW, OUTPUTS);
+			}
+		}
+
+		// Indices of the live planes, still grouped by candidate
+		int[] live = new int[total];
+		for (int a = 0; a < total; a++) live[a] = a;
+		int liveCount = total;
+
+		// Preallocated batch, reused every tick
+		double[][] batch = new double[total][FEATURES];
+		double[][] outputs = new double[total][OUTPUTS];
+
+		long warmUp = WARM_UP_MILLIS / TIMER_INTERVAL;
+		for (long time = 1; time <= maxTicks && liveCount > 0; time++) {
+			var next = cave.pollFirst();
+			cave.addLast(next);
+			generator.generate(next);
+
+			// The first column carved is the first wall the planes reach, once the warm-up is over
+			if (time == 1) {
+				for (int a = 0; a < total; a++) rows[a] = startRow(next, agent[a], startOffsets[agent[a]]);
+			}
+
+			if (time >= warmUp) {
+				byte[] columnAhead = cave.get((PLAYER_COLUMN + 1) % MODEL_WIDTH);
+				for (int i = 0; i < liveCount; i++) {
+					GameView.extractFeatures(columnAhead, rows[live[i]], batch[i]);
+				}
+
+				// One inference pass per candidate over its run of live planes
+				for (int from = 0; from < liveCount;) {
+					int to = from;
+					while (to < liveCount && owner[live[to]] == owner[live[from]]) to++;
+					candidates.get(owner[live[from]]).predictBatch(batch, outputs, from, to);
+					from = to;
+				}
+
+				for (int i = 0; i < liveCount; i++) {
+					int a = live[i];
+					int move = GameView.toMove(smoothers[a].add(outputs[i]));
+					rows[a] = Math.max(0, Math.min(rows[a] + move, MODEL_HEIGHT - 1));
+				}
+			}
+
+			// Retire the planes that hit the wall, keeping the survivors in order
+			byte[] column = cave.get(PLAYER_COLUMN);
+			int kept = 0;
+			for (int i = 0; i < liveCount; i++) {
+				int a = live[i];
+				if (column[rows[a]] != 0) {
+					survived[a] = time;
+				} else {
+					live[kept++] = a;
+				}
+			}
+			for (int i = 0; i < kept; i++) survived[live[i]] = time;
+			liveCount = kept;
+		}
+
+		var results = new ArrayList<Result>(total);
+		for (int c = 0, a = 0; c < candidates.size(); c++) {
+			for (int i = 0; i < populations.get(c); i++, a++) {
+				results.add(new Result(names.get(c), i, survived[a]));
+			}
+		}
+		results.sort(Comparator.comparingLong(Result::ticks).reversed());
+		return results;
+	}
+
+	/**
+	 * Picks the start row of a plane inside the gap of the first column it
+	 * meets, since planes hold still until that column arrives.
+	 *
+	 * @param firstColumn The first column carved.
+	 * @param agent       The number of the plane within its candidate.
+	 * @param offset      Where in the gap to start, from 0 (top) to 1 (bottom).
+	 * @return The start row.
+	 */
+	static int startRow(byte[] firstColumn, int agent, double offset) {
+		int top = 0;
+		while (top < MODEL_HEIGHT && firstColumn[top] != 0) top++;
+		int bottom = top;
+		while (bottom < MODEL_HEIGHT && firstColumn[bottom] == 0) bottom++;
+		if (agent == 0 && START_ROW >= top && START_ROW < bottom) return START_ROW; // Like the game
+		return top + (int) (offset * (bottom - top));
+	}
+
+	/**
+	 * Ranks the models given on the command line, defaulting to model.eg.
+	 */
+	public static void main(String[] args) {
+		final int agents = 10; // Planes per model
+		final long maxTicks = 3000; // Five minutes of game time
+		final long seed = System.nanoTime();
+
+		var evaluator = new PopulationEvaluator();
+		for (String path : args.length == 0 ? new String[] { "model.eg" } : args) {
+			var candidate = new NeuralNetworkAutopilot();
+			candidate.loadTrainedNetwork(path);
+			evaluator.add(path, candidate, agents);
+		}
+
+		long start = System.nanoTime();
+		var results = evaluator.evaluate(maxTicks, seed);
+		long elapsed = System.nanoTime() - start;
+
+		System.out.println("Survival ranking for cave seed " + seed + ":");
+		for (int i = 0; i < results.size(); i++) {
+			var r = results.get(i);
+			System.out.printf("%3d. %s #%d: %.1fs%n", i + 1, r.name(), r.agent(), r.seconds());
+		}
+		System.out.printf("Evaluated %d planes in %.1fms%n", results.size(), elapsed / 1e6);
+	}
+}
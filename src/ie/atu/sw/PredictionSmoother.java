@@ -0,0 +1,62 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+
+/**
+ * Averages the most recent network outputs of one plane, keeping them in a
+ * fixed ring of buffers so that smoothing allocates nothing per tick.
+ */
+public class PredictionSmoother {
+	private final double[][] window;
+	private final double[] smoothed;
+	private int count; // Outputs in the window, up to its length
+	private int next; // Slot the next output is copied into
+
+	/**
+	 * @param windowSize The number of outputs averaged.
+	 * @param outputs    The size of each output.
+	 */
+	public PredictionSmoother(int windowSize, int outputs) {
+		this.window = new double[windowSize][outputs];
+		this.smoothed = new double[outputs];
+	}
+
+	/**
+	 * Adds an output to the window and averages the window.
+	 *
+	 * @param output The newest output of the network, copied.
+	 * @return The average of the outputs in the window, overwritten by the
+	 *         next call.
+	 */
+	public double[] add(double[] output) {
+		System.arraycopy(output, 0, window[next], 0, smoothed.length);
+		next = (next + 1) % window.length;
+		count = Math.min(count + 1, window.length);
+
+		Arrays.fill(smoothed, 0);
+		for (int k = 0; k < count; k++) { // Oldest first
+			double[] pred = window[(next - count + k + window.length) % window.length];
+			for (int i = 0; i < smoothed.length; i++) {
+				smoothed[i] += pred[i] / count;
+			}
+		}
+		return smoothed;
+	}
+
+	/**
+	 * Forgets every output.
+	 */
+	public void clear() {
+		count = 0;
+		next = 0;
+	}
+
+	public String toString() {
+		var text = new StringBuilder("[");
+		for (int k = 0; k < count; k++) {
+			if (k > 0) text.append(", ");
+			text.append(Arrays.toString(window[(next - count + k + window.length) % window.length]));
+		}
+		return text.append(']').toString();
+	}
+}
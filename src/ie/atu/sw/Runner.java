@@ -5,13 +5,14 @@ import static java.lang.System.*;
 
 public class Runner {
 	public static void main(String[] args) throws Exception {
+		long launchTime = nanoTime(); //Time-to-first-frame is measured from here
 		
 		/*
 		 * Always run a GUI in a separate thread from the main thread.
 		 */
 		SwingUtilities.invokeAndWait(() -> { //Sounds like the Command Pattern at work!
 			try {
-				new GameWindow();
+				new GameWindow(launchTime);
 			} catch (Exception e) {
 				out.println("[ERROR] Yikes...problem starting up " + e.getMessage());
 			}
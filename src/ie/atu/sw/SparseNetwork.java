@@ -0,0 +1,123 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.neural.flat.FlatNetwork;
+
+/**
+ * A pruned copy of a feed forward network that only stores and multiplies the
+ * weights that survived pruning.
+ *
+ * Each layer's weights are kept in compressed sparse rows: for every neuron the
+ * indices and values of its remaining incoming connections. The layout of
+ * layers, bias neurons and activation functions follows the Encog flat network
+ * it was built from, where layer 0 is the output layer.
+ */
+public class SparseNetwork implements Autopilot {
+	private final int layerCount;
+	private final int[] feedCounts; // Neurons per layer, excluding bias
+	private final double[] biasValues; // NaN when the layer has no bias neuron
+	private final ActivationFunction[] activations;
+
+	// Per weight level, connecting layer level + 1 to layer level
+	private final int[][] rowStart;
+	private final int[][] columns;
+	private final double[][] values;
+
+	private final double[][] layerOutput; // Reused between predictions
+	private final int nonZero;
+
+	/**
+	 * Prunes every weight whose magnitude is at or below a threshold.
+	 *
+	 * @param flat      The dense network to prune.
+	 * @param threshold The largest magnitude that is dropped.
+	 */
+	public SparseNetwork(FlatNetwork flat, double threshold) {
+		int[] layerCounts = flat.getLayerCounts();
+		int[] weightIndex = flat.getWeightIndex();
+		double[] weights = flat.getWeights();
+
+		layerCount = layerCounts.length;
+		feedCounts = flat.getLayerFeedCounts().clone();
+		activations = flat.getActivationFunctions();
+		biasValues = new double[layerCount];
+		layerOutput = new double[layerCount][];
+		for (int l = 0; l < layerCount; l++) {
+			biasValues[l] = layerCounts[l] > feedCounts[l] ? flat.getBiasActivation()[l] : Double.NaN;
+			layerOutput[l] = new double[layerCounts[l]];
+			if (!Double.isNaN(biasValues[l])) layerOutput[l][feedCounts[l]] = biasValues[l];
+		}
+
+		rowStart = new int[layerCount - 1][];
+		columns = new int[layerCount - 1][];
+		values = new double[layerCount - 1][];
+		int kept = 0;
+		for (int level = 0; level < layerCount - 1; level++) {
+			int fromSize = layerCounts[level + 1];
+			int toSize = feedCounts[level];
+			int[] cols = new int[fromSize * toSize];
+			double[] vals = new double[fromSize * toSize];
+			int[] starts = new int[toSize + 1];
+			int n = 0;
+			for (int x = 0; x < toSize; x++) {
+				starts[x] = n;
+				for (int y = 0; y < fromSize; y++) {
+					double w = weights[weightIndex[level] + x * fromSize + y];
+					if (Math.abs(w) > threshold) {
+						cols[n] = y;
+						vals[n++] = w;
+					}
+				}
+			}
+			starts[toSize] = n;
+			rowStart[level] = starts;
+			columns[level] = Arrays.copyOf(cols, n);
+			values[level] = Arrays.copyOf(vals, n);
+			kept += n;
+		}
+		nonZero = kept;
+	}
+
+	public double[] predict(double[] gameFeatures) {
+		int input = layerCount - 1;
+		System.arraycopy(gameFeatures, 0, layerOutput[input], 0, feedCounts[input]);
+
+		for (int level = input - 1; level >= 0; level--) {
+			double[] from = layerOutput[level + 1];
+			double[] to = layerOutput[level];
+			int[] starts = rowStart[level];
+			int[] cols = columns[level];
+			double[] vals = values[level];
+			for (int x = 0; x < feedCounts[level]; x++) {
+				double sum = 0;
+				for (int i = starts[x]; i < starts[x + 1]; i++) {
+					sum += vals[i] * from[cols[i]];
+				}
+				to[x] = sum;
+			}
+			activations[level].activationFunction(to, 0, feedCounts[level]);
+		}
+		return Arrays.copyOf(layerOutput[0], feedCounts[0]);
+	}
+
+	/**
+	 * @return The number of weights that survived pruning.
+	 */
+	public int getNonZeroCount() {
+		return nonZero;
+	}
+
+	/**
+	 * @return The bytes taken by the weights and their sparse indices.
+	 */
+	public long getWeightBytes() {
+		long bytes = 0;
+		for (int level = 0; level < values.length; level++) {
+			bytes += values[level].length * (long) Double.BYTES + columns[level].length * (long) Integer.BYTES
+					+ rowStart[level].length * (long) Integer.BYTES;
+		}
+		return bytes;
+	}
+}
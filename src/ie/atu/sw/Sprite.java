@@ -1,6 +1,11 @@
 package ie.atu.sw;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.imageio.ImageIO;
 
@@ -11,15 +16,19 @@ public class Sprite {
  	private int frame = 0; 				//Initial starting index of the image 
 	
 	public Sprite(String name, int frames, String... files) throws Exception{
+		this(name, frames, read(files));
+	}
+	
+	private Sprite(String name, int frames, BufferedImage... frameImages){
 		this.name = name;
 		this.index = 0; //Initialise the starting index to zero
-		this.images = new BufferedImage[files.length / frames][frames]; //Initialise the image frames
+		this.images = new BufferedImage[frameImages.length / frames][frames]; //Initialise the image frames
 		
-		//Read the varargs list of images into a 2D array
+		//Arrange the frames into a 2D array
 		var row = 0;
 		var col = 0;
-		for (int i = 0; i < files.length; i++){
-			images[row][col] = ImageIO.read(new java.io.File(files[i])); //Read in each image as a BufferedImage
+		for (int i = 0; i < frameImages.length; i++){
+			images[row][col] = frameImages[i];
 
 			col++;
 			if (col % frames == 0){
@@ -29,6 +38,36 @@ public class Sprite {
 		}
 	}
 	
+	/*
+	 * Reads every frame of a sprite in parallel on the given executor. The
+	 * future completes once all of the frames have been decoded.
+	 */
+	public static CompletableFuture<Sprite> loadAsync(Executor executor, String name, int frames, String... files){
+		var reads = new ArrayList<CompletableFuture<BufferedImage>>();
+		for (String file : files){
+			reads.add(CompletableFuture.supplyAsync(() -> read(file), executor));
+		}
+		
+		return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0]))
+				.thenApply(done -> new Sprite(name, frames, reads.stream().map(CompletableFuture::join).toArray(BufferedImage[]::new)));
+	}
+	
+	private static BufferedImage[] read(String... files){
+		var frameImages = new BufferedImage[files.length];
+		for (int i = 0; i < files.length; i++){
+			frameImages[i] = read(files[i]);
+		}
+		return frameImages;
+	}
+	
+	private static BufferedImage read(String file){ //Read in an image as a BufferedImage
+		try {
+			return ImageIO.read(new java.io.File(file));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
 	public BufferedImage getNext(){ //Returns the next image frame
 		frame++;
 		
@@ -0,0 +1,191 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.ml.train.MLTrain;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
+
+/**
+ * Collapses repeated (features, action) rows of a training set into unique
+ * entries carrying a count.
+ *
+ * The game quantises every feature to steps of 1/20, so a recorded session is
+ * mostly the same handful of states over and over. Each unique row is emitted
+ * once with its count as the pair significance, which Encog multiplies into the
+ * gradient of that row. The rows are returned in a {@link WeightedMLDataSet} so
+ * the significance reaches the trainer: the summed gradient, and so every RPROP
+ * step, is the same as for the raw data while an epoch only visits the
+ * distinct states.
+ */
+public class TrainingSetCompactor {
+	private static final int STEPS = 20; // Features are multiples of 1/STEPS
+	private static final int BITS_PER_FEATURE = 5; // Enough for 0..STEPS
+	private static final int BITS_PER_ACTION = 2; // Up, stay or down
+	private static final int MAX_FEATURES = (Long.SIZE - 1 - BITS_PER_ACTION) / BITS_PER_FEATURE;
+
+	private static final long EMPTY = -1L; // Packed keys are never negative
+
+	// Open addressing table from packed key to the index of its unique row
+	private long[] keys;
+	private int[] slots;
+	private int mask;
+
+	private int rowsIn;
+	private int rowsOut;
+
+	/**
+	 * Compacts a data set of one-hot labelled rows.
+	 *
+	 * Rows that cannot be packed (off-grid features, soft labels or too many
+	 * inputs) are passed through untouched with their original significance.
+	 *
+	 * @param dataSet The raw data set, one row per recorded tick.
+	 * @return A data set with one weighted row per distinct (features, action).
+	 */
+	public WeightedMLDataSet compact(MLDataSet dataSet) {
+		int size = (int) dataSet.getRecordCount();
+		int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+		keys = new long[capacity];
+		slots = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, EMPTY);
+
+		WeightedMLDataSet compacted = new WeightedMLDataSet();
+		rowsIn = 0;
+		for (MLDataPair pair : dataSet) {
+			rowsIn++;
+			long key = pack(pair.getInputArray(), pair.getIdealArray());
+			if (key == EMPTY) {
+				compacted.add(copy(pair, pair.getSignificance()));
+				continue;
+			}
+
+			int slot = (int) mix(key) & mask;
+			while (keys[slot] != EMPTY && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+
+			if (keys[slot] == key) {
+				MLDataPair unique = compacted.get(slots[slot]);
+				unique.setSignificance(unique.getSignificance() + pair.getSignificance());
+			} else {
+				keys[slot] = key;
+				slots[slot] = compacted.size();
+				compacted.add(copy(pair, pair.getSignificance()));
+			}
+		}
+		rowsOut = compacted.size();
+
+		// The table is only needed while compacting
+		keys = null;
+		slots = null;
+		return compacted;
+	}
+
+	/**
+	 * @return The number of rows read by the last call to compact.
+	 */
+	public int getRowsIn() {
+		return rowsIn;
+	}
+
+	/**
+	 * @return The number of rows written by the last call to compact.
+	 */
+	public int getRowsOut() {
+		return rowsOut;
+	}
+
+	/*
+	 * Packs the quantised features and the action index into one long, or returns
+	 * EMPTY if the row is not on the feature grid or is not one-hot.
+	 */
+	private static long pack(double[] features, double[] ideal) {
+		if (features.length > MAX_FEATURES || ideal.length > (1 << BITS_PER_ACTION)) return EMPTY;
+
+		int action = -1;
+		for (int i = 0; i < ideal.length; i++) {
+			if (ideal[i] == 1.0 && action < 0) {
+				action = i;
+			} else if (ideal[i] != 0.0) {
+				return EMPTY;
+			}
+		}
+		if (action < 0) return EMPTY;
+
+		long key = action;
+		for (double feature : features) {
+			long step = Math.round(feature * STEPS);
+			if (step < 0 || step > STEPS || step / (double) STEPS != feature) return EMPTY;
+			key = (key << BITS_PER_FEATURE) | step;
+		}
+		return key;
+	}
+
+	// Spread the low-entropy packed bits across the table (murmur3 finaliser)
+	private static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	private static MLDataPair copy(MLDataPair pair, double significance) {
+		var copy = new BasicMLDataPair(new BasicMLData(pair.getInputArray().clone()),
+				new BasicMLData(pair.getIdealArray().clone()));
+		copy.setSignificance(significance);
+		return copy;
+	}
+
+	/**
+	 * Checks that training on the compacted rows is training on the raw rows:
+	 * the same network trained for a few RPROP iterations on both must end with
+	 * the same weights and report the same error.
+	 */
+	public static void main(String[] args) {
+		final int iterations = 5;
+		final double tolerance = 1e-9; // Only the summation order differs
+
+		var loader = new NeuralNetworkAutopilot();
+		MLDataSet raw = loader.splitData(loader.loadTrainingData(args.length > 0 ? args[0] : "training_data.txt"), 0.8)[0];
+		var compactor = new TrainingSetCompactor();
+		WeightedMLDataSet compacted = compactor.compact(raw);
+
+		loader.createNetwork();
+		BasicNetwork rawNetwork = loader.getNetwork();
+		BasicNetwork compactedNetwork = (BasicNetwork) rawNetwork.clone();
+
+		var rawTrain = new ResilientPropagation(rawNetwork, raw);
+		var compactedTrain = new ResilientPropagation(compactedNetwork, compacted);
+		compactedTrain.addStrategy(new WeightedMLDataSet.ErrorStrategy(compacted));
+		rawTrain.setThreadCount(1);
+		compactedTrain.setThreadCount(1);
+
+		double errorDifference = 0;
+		for (int i = 0; i < iterations; i++) {
+			errorDifference = Math.max(errorDifference, Math.abs(iterate(rawTrain) - iterate(compactedTrain)));
+		}
+
+		double[] expected = rawNetwork.getFlat().getWeights();
+		double[] actual = compactedNetwork.getFlat().getWeights();
+		double weightDifference = 0;
+		for (int i = 0; i < expected.length; i++) {
+			weightDifference = Math.max(weightDifference, Math.abs(expected[i] - actual[i]));
+		}
+
+		System.out.printf("Compacted %d rows to %d. After %d iterations: max weight difference %.3g, max error difference %.3g%n",
+				compactor.getRowsIn(), compactor.getRowsOut(), iterations, weightDifference, errorDifference);
+		System.out.println(weightDifference <= tolerance && errorDifference <= tolerance ? "OK" : "MISMATCH");
+	}
+
+	private static double iterate(MLTrain train) {
+		train.iteration();
+		return train.getError();
+	}
+}
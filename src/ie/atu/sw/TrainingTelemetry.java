@@ -0,0 +1,90 @@
+package ie.atu.sw;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Writes one JSON object per line describing the progress of training, so a
+ * run can be plotted or compared afterwards instead of scrolled through on
+ * stdout.
+ *
+ * Two kinds of record are written: an "epoch" record after every training
+ * iteration and a "validation" record whenever a background validation pass
+ * finishes, which may be several epochs after the weights it scored.
+ */
+public class TrainingTelemetry implements AutoCloseable {
+	private final PrintWriter out;
+
+	/**
+	 * Opens a telemetry stream, replacing any previous file. If the file cannot
+	 * be created the records are discarded so that training still runs.
+	 *
+	 * @param path The file to write to.
+	 */
+	public TrainingTelemetry(String path) {
+		PrintWriter writer;
+		try {
+			writer = new PrintWriter(new FileWriter(path));
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Error opening the telemetry file: " + path);
+			writer = new PrintWriter(Writer.nullWriter());
+		}
+		this.out = writer;
+	}
+
+	/**
+	 * Records one training iteration.
+	 *
+	 * @param epoch         The number of the epoch.
+	 * @param wallNanos     The wall time of the iteration.
+	 * @param samples       The number of rows visited by the iteration.
+	 * @param trainingError The training error reported by the trainer.
+	 * @param steps         The RPROP update values, or null for other trainers.
+	 */
+	public void epoch(int epoch, long wallNanos, long samples, double trainingError, double[] steps) {
+		double seconds = wallNanos / 1e9;
+		var line = new StringBuilder(String.format(Locale.ROOT,
+				"{\"event\":\"epoch\",\"epoch\":%d,\"wall_ms\":%.3f,\"samples_per_sec\":%.1f,\"training_error\":%s",
+				epoch, wallNanos / 1e6, seconds > 0 ? samples / seconds : 0, number(trainingError)));
+
+		if (steps != null && steps.length > 0) {
+			double min = Double.POSITIVE_INFINITY, max = 0, sum = 0;
+			for (double step : steps) {
+				min = Math.min(min, step);
+				max = Math.max(max, step);
+				sum += step;
+			}
+			line.append(String.format(Locale.ROOT, ",\"step_min\":%s,\"step_mean\":%s,\"step_max\":%s",
+					number(min), number(sum / steps.length), number(max)));
+		}
+		out.println(line.append('}'));
+	}
+
+	/**
+	 * Records the result of a validation pass.
+	 *
+	 * @param epoch           The epoch whose weights were validated.
+	 * @param reportedAtEpoch The epoch training had reached when the result was used.
+	 * @param wallNanos       The wall time of the validation pass.
+	 * @param validationError The error over the validation set.
+	 * @param improved        Whether this was the best validation error so far.
+	 */
+	public void validation(int epoch, int reportedAtEpoch, long wallNanos, double validationError, boolean improved) {
+		out.println(String.format(Locale.ROOT,
+				"{\"event\":\"validation\",\"epoch\":%d,\"reported_at_epoch\":%d,\"wall_ms\":%.3f,\"validation_error\":%s,\"improved\":%b}",
+				epoch, reportedAtEpoch, wallNanos / 1e6, number(validationError), improved));
+	}
+
+	public void close() {
+		out.close();
+	}
+
+	// JSON has no literals for NaN or infinity
+	private static String number(double value) {
+		return Double.isFinite(value) ? Double.toString(value) : "null";
+	}
+}
@@ -0,0 +1,111 @@
+package ie.atu.sw;
+
+import java.util.List;
+
+import org.encog.ml.MLRegression;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.ml.train.MLTrain;
+import org.encog.ml.train.strategy.Strategy;
+
+/**
+ * A data set whose pair significance reaches Encog's propagation trainers.
+ *
+ * The gradient workers read rows through getRecord, which in BasicMLDataSet
+ * only copies the input and ideal arrays, so every row trains with a weight of
+ * 1. This set copies the significance as well, and hands the same kind of set
+ * to every worker.
+ *
+ * Encog's error calculation squares the significance and averages over the
+ * rows of the set rather than their weights, so the error a trainer reports
+ * for weighted rows is not the error of the rows they stand for. Attach an
+ * {@link ErrorStrategy} to report the weighted mean squared error instead.
+ */
+public class WeightedMLDataSet extends BasicMLDataSet {
+	private static final long serialVersionUID = 1L;
+
+	public WeightedMLDataSet() {
+		super();
+	}
+
+	/**
+	 * @param data The pairs to share, not copied.
+	 */
+	public WeightedMLDataSet(List<MLDataPair> data) {
+		super(data);
+	}
+
+	public void getRecord(long index, MLDataPair pair) {
+		super.getRecord(index, pair);
+		pair.setSignificance(getData().get((int) index).getSignificance());
+	}
+
+	public MLDataSet openAdditional() {
+		return new WeightedMLDataSet(getData());
+	}
+
+	/**
+	 * @return The sum of the significance of every row, the number of raw rows
+	 *         the set stands for.
+	 */
+	public double getTotalSignificance() {
+		double total = 0;
+		for (MLDataPair pair : getData()) total += pair.getSignificance();
+		return total;
+	}
+
+	/**
+	 * Calculates the mean squared error with every row counted as many times
+	 * as its significance, which is the error of the raw rows it stands for.
+	 *
+	 * @param method The model to evaluate.
+	 * @return The weighted mean squared error.
+	 */
+	public double calculateError(MLRegression method) {
+		double sum = 0, weight = 0;
+		for (MLDataPair pair : getData()) {
+			double[] actual = method.compute(new BasicMLData(pair.getInputArray())).getData();
+			double[] ideal = pair.getIdealArray();
+			double squared = 0;
+			for (int i = 0; i < ideal.length; i++) {
+				double delta = ideal[i] - actual[i];
+				squared += delta * delta;
+			}
+			sum += pair.getSignificance() * squared / ideal.length;
+			weight += pair.getSignificance();
+		}
+		return weight > 0 ? sum / weight : 0;
+	}
+
+	/**
+	 * Replaces the error a trainer reports with the weighted error of the
+	 * network before the iteration, as the trainer's own error is. Add it
+	 * before any strategy that reads the error.
+	 */
+	public static class ErrorStrategy implements Strategy {
+		private final WeightedMLDataSet dataSet;
+		private MLTrain train;
+		private double error;
+
+		/**
+		 * @param dataSet The weighted set the trainer runs over.
+		 */
+		public ErrorStrategy(WeightedMLDataSet dataSet) {
+			this.dataSet = dataSet;
+		}
+
+		public void init(MLTrain train) {
+			this.train = train;
+		}
+
+		public void preIteration() {
+			error = dataSet.calculateError((MLRegression) train.getMethod());
+		}
+
+		public void postIteration() {
+			train.setError(error);
+		}
+	}
+}